@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps searched positions in a file, so they are not
+ * searched again in later games or after the program is restarted. It
+ * works like the transposition table, but the table is a memory-mapped
+ * file and only positions searched to at least MIN_DEPTH are kept.
+ *
+ * The file starts with a header of MAGIC, VERSION and the number of
+ * buckets, followed by the buckets: BUCKET_SIZE slots of two longs,
+ * the key XOR the data and the data, with the data laid out as in the
+ * transposition table (see TranspositionTable.encode). A slot is only
+ * used when the two longs XOR back to its key, so a slot that was half
+ * written when the program or the machine crashed reads as empty. A
+ * file with a header that does not match is cleared.
+ *
+ * Keys are exact (see Symmetry.canonical), so mirror images share an
+ * entry and there are no false hits. They include the color to move and
+ * the color of player 1, since scores are from player 1's point of view.
+ *
+ * Stores are collected in a Batch of each search thread, without
+ * locking, and written to the file BATCH_SIZE at a time. Only writing a
+ * batch takes the cache's lock. A search commits what is left in its
+ * batch when it ends, and flush() forces the file to the disk. Lookups
+ * only see what was written, but the transposition table covers the
+ * positions of the current search.
+ */
+public class AnalysisCache {
+	public static final int MAGIC = 0x50414E43;		//"PANC"
+	public static final int VERSION = 1;
+	public static final int MIN_DEPTH = 2;			//shallower positions are cheaper to search again.
+	public static final int BATCH_SIZE = 1024;		//stores written to the file at once.
+
+	private static final int HEADER_BYTES = 16;
+	private static final int BUCKET_SIZE = 4;		//slots per bucket.
+	private static final int SLOT_BYTES = 16;		//two longs.
+
+	private final MappedByteBuffer buffer;
+	private final long bucketMask;
+
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder cutoffs = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+
+	private AnalysisCache(MappedByteBuffer buffer, long buckets) {
+		this.buffer = buffer;
+		this.bucketMask = buckets - 1;
+	}
+
+	/**
+	 * Opens the cache file, or creates it if it does not exist. The
+	 * number of buckets is rounded down to a power of two, and a file
+	 * made for another size is cleared.
+	 *
+	 * @param fileName the name of the cache file.
+	 * @param sizeInBytes size of the file.
+	 * @return the cache.
+	 * @throws IOException if the file can not be opened or created.
+	 */
+	public static AnalysisCache open(String fileName, long sizeInBytes) throws IOException {
+		long buckets = Long.highestOneBit(Math.max(1, sizeInBytes / (SLOT_BYTES * BUCKET_SIZE)));
+		//a mapping holds at most 2GB.
+		buckets = Math.min(buckets, Integer.MAX_VALUE / (SLOT_BYTES * BUCKET_SIZE) / 2);
+		long size = HEADER_BYTES + buckets * BUCKET_SIZE * SLOT_BYTES;
+		Path path = Paths.get(fileName);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+			boolean valid = channel.size() == size;
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			valid = valid && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+					&& buffer.getLong(8) == buckets;
+			if (!valid) {
+				//the header goes last, so a file that is cut off while it is
+				//cleared is cleared again.
+				buffer.putInt(0, 0);
+				buffer.force();
+				for (long offset = HEADER_BYTES; offset < size; offset += 8) {
+					buffer.putLong((int) offset, 0);
+				}
+				buffer.putInt(4, VERSION);
+				buffer.putLong(8, buckets);
+				buffer.force();
+				buffer.putInt(0, MAGIC);
+				buffer.force();
+			}
+			return new AnalysisCache(buffer, buckets);
+		}
+	}
+
+	/**
+	 * The key of a position in the cache.
+	 *
+	 * @param canonical the canonical key and transform of the position.
+	 * @param color the bitboard index of the color to move.
+	 * @param player1 the bitboard index of player 1's color.
+	 * @return the key.
+	 */
+	public static long key(long canonical, int color, int player1) {
+		return Symmetry.getKey(canonical) << 2 | color << 1 | player1;
+	}
+
+	/**
+	 * Looks up a position.
+	 *
+	 * @param key the key of the position.
+	 * @return the data of the entry, 0 if the position is not stored.
+	 */
+	public long probe(long key) {
+		probes.increment();
+		int index = index(key);
+		for (int i = index; i < index + BUCKET_SIZE * SLOT_BYTES; i += SLOT_BYTES) {
+			long data = buffer.getLong(i + 8);
+			if ((buffer.getLong(i) ^ data) == key && data != 0) {
+				hits.increment();
+				return data;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Stores of one search thread waiting to be written. It is only used
+	 * by the thread that made it.
+	 */
+	public final class Batch {
+		private final long[] keys = new long[BATCH_SIZE];
+		private final long[] data = new long[BATCH_SIZE];
+		private int size;
+
+		private Batch() {
+			//made by newBatch
+		}
+
+		/**
+		 * Stores the result of a searched position. It is written to the
+		 * file when the batch is full or committed.
+		 *
+		 * @param key the key of the position.
+		 * @param depth the depth the position was searched to.
+		 * @param bound EXACT, LOWER_BOUND or UPPER_BOUND.
+		 * @param score the score of the position.
+		 * @param move the best move found, Move.NONE if there is none.
+		 */
+		public void store(long key, int depth, int bound, int score, int move) {
+			keys[size] = key;
+			data[size] = TranspositionTable.encode(depth, bound, score, move, 0);
+			if (++size == BATCH_SIZE) {
+				commit();
+			}
+		}
+
+		/**
+		 * Writes the stores of the batch to the file.
+		 */
+		public void commit() {
+			if (size > 0) {
+				write(keys, data, size);
+				stores.add(size);
+				size = 0;
+			}
+		}
+	}
+
+	/**
+	 * @return an empty batch for the stores of one search thread.
+	 */
+	public Batch newBatch() {
+		return new Batch();
+	}
+
+	/**
+	 * Called by the search when a stored score was good enough to
+	 * skip searching a position.
+	 */
+	public void recordCutoff() {
+		cutoffs.increment();
+	}
+
+	/**
+	 * Forces what the batches wrote to the disk. Batches that were not
+	 * committed are not written.
+	 */
+	public synchronized void flush() {
+		buffer.force();
+	}
+
+	/**
+	 * Writes stores into their buckets. A store replaces the entry of
+	 * the same position unless that was searched deeper, otherwise the
+	 * shallowest entry.
+	 */
+	private synchronized void write(long[] keys, long[] entries, int count) {
+		for (int p = 0; p < count; p++) {
+			long key = keys[p];
+			long data = entries[p];
+			int index = index(key);
+			int replace = index;
+			int lowestDepth = Integer.MAX_VALUE;
+			for (int i = index; i < index + BUCKET_SIZE * SLOT_BYTES; i += SLOT_BYTES) {
+				long old = buffer.getLong(i + 8);
+				if (old != 0 && (buffer.getLong(i) ^ old) == key) {
+					replace = TranspositionTable.getDepth(old) > TranspositionTable.getDepth(data) ? -1 : i;
+					break;
+				}
+				int depth = old == 0 ? -1 : TranspositionTable.getDepth(old);
+				if (depth < lowestDepth) {
+					replace = i;
+					lowestDepth = depth;
+				}
+			}
+			if (replace >= 0) {
+				buffer.putLong(replace + 8, data);
+				buffer.putLong(replace, key ^ data);
+			}
+		}
+	}
+
+	private int index(long key) {
+		return (int) (HEADER_BYTES + (Symmetry.hashKey(key) & bucketMask) * BUCKET_SIZE * SLOT_BYTES);
+	}
+
+	public long getProbes() {
+		return probes.sum();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getCutoffs() {
+		return cutoffs.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("analysis cache %dMB: %d probes, %d hits, %d cutoffs, %d stores",
+				buffer.capacity() >> 20, getProbes(), getHits(), getCutoffs(), stores.sum());
+	}
+}
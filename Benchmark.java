@@ -0,0 +1,566 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class measures the engine on a fixed set of positions so search
+ * options can be compared by their node counts and times. Run it with
+ * the name of a report and a depth, for example:
+ *
+ *   java Benchmark ordering 3
+ *   java Benchmark pvs 3
+ *   java Benchmark smp 4 8
+ *   java Benchmark ybwc 4 8
+ *   java Benchmark threats 3
+ *   java Benchmark quiescence 2
+ *   java Benchmark selective 4
+ *   java Benchmark endgame 14		(empty cells instead of a depth)
+ *   java Benchmark dfpn 16			(empty cells instead of a depth)
+ *   java Benchmark mcts 100 8		(milliseconds per move instead of a depth)
+ */
+public class Benchmark {
+	public static final int NUM_POSITIONS = 12;
+	private static final long SEED = 20190407L;		//same positions on every run.
+
+	/**
+	 * Main method that runs the report named in the arguments.
+	 *
+	 * @param args report name and search depth.
+	 */
+	public static void main(String args[]) {
+		String report = args.length > 0 ? args[0] : "ordering";
+		int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		if (report.equals("ordering")) {
+			orderingReport(depth);
+		} else if (report.equals("pvs")) {
+			pvsReport(depth);
+		} else if (report.equals("smp")) {
+			int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+					: Runtime.getRuntime().availableProcessors();
+			smpReport(depth, maxThreads);
+		} else if (report.equals("ybwc")) {
+			int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+					: Runtime.getRuntime().availableProcessors();
+			ybwcReport(depth, maxThreads);
+		} else if (report.equals("threats")) {
+			threatsReport(depth);
+		} else if (report.equals("quiescence")) {
+			quiescenceReport(depth);
+		} else if (report.equals("selective")) {
+			selectiveReport(depth);
+		} else if (report.equals("endgame")) {
+			endgameReport(depth);
+		} else if (report.equals("dfpn")) {
+			dfpnReport(depth);
+		} else if (report.equals("mcts")) {
+			int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+					: Runtime.getRuntime().availableProcessors();
+			mctsReport(args.length > 1 ? depth : 100, maxThreads);
+		} else {
+			System.out.println("Unknown report: " + report);
+		}
+	}
+
+	/**
+	 * Builds the benchmark positions by playing random moves from the
+	 * empty board, from the opening to the middle game. Player 1 is
+	 * black, and positions where the game is already over are skipped.
+	 *
+	 * @return the positions.
+	 */
+	public static List<GameBoard> positions() {
+		List<GameBoard> positions = new ArrayList<GameBoard>();
+		Random rand = new Random(SEED);
+		int[] moves = new int[GameBoard.MAX_MOVES];
+		while (positions.size() < NUM_POSITIONS) {
+			GameBoard gameBoard = new GameBoard();
+			gameBoard.setPlayer1color('B');
+			gameBoard.setPlayer2color('W');
+			int plies = 2 + positions.size() * 14 / NUM_POSITIONS;
+			for (int ply = 0; ply < plies && !gameBoard.isGameOver(); ply++) {
+				int color = ply % 2 == 0 ? GameBoard.BLACK : GameBoard.WHITE;
+				int numMoves = gameBoard.generateMoves(moves, color);
+				gameBoard.makeMove(moves[rand.nextInt(numMoves)], color);
+			}
+			if (!gameBoard.isGameOver()) {
+				positions.add(gameBoard);
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Whether player 1 (alpha) is to move: black moved first, so it is
+	 * black's turn when both colors have the same number of pieces.
+	 */
+	public static boolean isAlphaToMove(GameBoard gameBoard) {
+		return Long.bitCount(gameBoard.getBits(GameBoard.BLACK))
+				== Long.bitCount(gameBoard.getBits(GameBoard.WHITE));
+	}
+
+	/**
+	 * Compares alpha-beta with and without move ordering.
+	 */
+	private static void orderingReport(int depth) {
+		System.out.printf("%-4s %12s %8s %12s %8s %6s%n", "pos", "nodes", "ms", "ordered", "ms", "same");
+		long totalPlain = 0, totalOrdered = 0;
+		int numPosition = 0;
+		for (GameBoard gameBoard : positions()) {
+			boolean alphaPlayer = isAlphaToMove(gameBoard);
+			Computer plain = new Computer(new TranspositionTable(64 << 20));
+			SearchResult plainResult = timedSearch(plain, gameBoard, alphaPlayer, depth);
+			Computer ordered = new Computer(new TranspositionTable(64 << 20));
+			ordered.setMoveOrdering(true);
+			SearchResult orderedResult = timedSearch(ordered, gameBoard, alphaPlayer, depth);
+			totalPlain += plainResult.getNodes();
+			totalOrdered += orderedResult.getNodes();
+			System.out.printf("%-4d %12d %8d %12d %8d %6s%n", numPosition++,
+					plainResult.getNodes(), plainResult.getTimeMillis(),
+					orderedResult.getNodes(), orderedResult.getTimeMillis(),
+					plainResult.getScore() == orderedResult.getScore() ? "yes" : "NO");
+		}
+		System.out.printf("total %d -> %d nodes (%.1f%%)%n", totalPlain, totalOrdered,
+				100.0 * totalOrdered / totalPlain);
+	}
+
+	/**
+	 * Compares alpha-beta with principal variation search, both with
+	 * move ordering, and prints the principal variation PVS found.
+	 */
+	private static void pvsReport(int depth) {
+		System.out.printf("%-4s %12s %8s %12s %8s %6s  %s%n", "pos", "alphabeta", "ms", "pvs", "ms", "same", "pv");
+		long totalAlphaBeta = 0, totalPvs = 0;
+		int numPosition = 0;
+		for (GameBoard gameBoard : positions()) {
+			boolean alphaPlayer = isAlphaToMove(gameBoard);
+			Computer alphaBeta = new Computer(new TranspositionTable(64 << 20));
+			alphaBeta.setMoveOrdering(true);
+			SearchResult alphaBetaResult = timedSearch(alphaBeta, gameBoard, alphaPlayer, depth);
+			Computer pvs = new Computer(new TranspositionTable(64 << 20));
+			pvs.setMoveOrdering(true);
+			long start = System.nanoTime();
+			SearchResult pvsResult = pvs.principalVariationSearch(depth, new GameBoard(gameBoard), alphaPlayer);
+			pvsResult.setTimeMillis((System.nanoTime() - start) / 1000000);
+			totalAlphaBeta += alphaBetaResult.getNodes();
+			totalPvs += pvsResult.getNodes();
+			System.out.printf("%-4d %12d %8d %12d %8d %6s  %s%n", numPosition++,
+					alphaBetaResult.getNodes(), alphaBetaResult.getTimeMillis(),
+					pvsResult.getNodes(), pvsResult.getTimeMillis(),
+					alphaBetaResult.getScore() == pvsResult.getScore() ? "yes" : "NO",
+					pvsResult.getPrincipalVariationString());
+		}
+		System.out.printf("total %d -> %d nodes (%.1f%%)%n", totalAlphaBeta, totalPvs,
+				100.0 * totalPvs / totalAlphaBeta);
+	}
+
+	/**
+	 * Runs iterative deepening to the depth on every position with 1 to
+	 * maxThreads threads and prints the nodes per second and the time
+	 * it took to reach the depth.
+	 */
+	private static void smpReport(int depth, int maxThreads) {
+		System.out.printf("%-8s %12s %10s %12s %8s %8s%n", "threads", "nodes", "ms", "nodes/s", "speedup", "same");
+		long baseTime = 0;
+		List<GameBoard> positions = positions();
+		int[] baseMoves = new int[positions.size()];
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			long nodes = 0, time = 0;
+			int same = 0;
+			for (int i = 0; i < positions.size(); i++) {
+				GameBoard gameBoard = positions.get(i);
+				Computer computer = new Computer(new TranspositionTable(64 << 20));
+				computer.setMoveOrdering(true);
+				computer.setAlgorithm(Computer.PVS);
+				computer.setThreads(threads);
+				SearchResult result = computer.iterativeDeepening(new GameBoard(gameBoard),
+						isAlphaToMove(gameBoard), new SearchLimits(depth));
+				nodes += result.getNodes();
+				time += result.getTimeMillis();
+				if (threads == 1) {
+					baseMoves[i] = result.getBestMove();
+				}
+				if (result.getBestMove() == baseMoves[i]) {
+					same++;
+				}
+			}
+			if (threads == 1) {
+				baseTime = time;
+			}
+			System.out.printf("%-8d %12d %10d %12d %8.2f %5d/%d%n", threads, nodes, time,
+					time == 0 ? 0 : nodes * 1000 / time, time == 0 ? 0 : (double) baseTime / time,
+					same, positions.size());
+		}
+	}
+
+	/**
+	 * Runs the fork-join parallel alpha-beta on every position with 1 to
+	 * maxThreads threads, and prints its speedup over the serial
+	 * alphaBetaPrun and whether it found the same score and move.
+	 */
+	private static void ybwcReport(int depth, int maxThreads) {
+		List<GameBoard> positions = positions();
+		SearchResult[] serial = new SearchResult[positions.size()];
+		long serialTime = 0;
+		for (int i = 0; i < positions.size(); i++) {
+			GameBoard gameBoard = positions.get(i);
+			serial[i] = timedSearch(new Computer(), gameBoard, isAlphaToMove(gameBoard), depth);
+			serialTime += serial[i].getTimeMillis();
+		}
+		System.out.printf("serial alphaBetaPrun: %d ms%n", serialTime);
+		System.out.printf("%-8s %12s %10s %12s %8s %8s%n", "threads", "nodes", "ms", "nodes/s", "speedup", "same");
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			ParallelSearch search = new ParallelSearch(threads);
+			long nodes = 0, time = 0;
+			int same = 0;
+			for (int i = 0; i < positions.size(); i++) {
+				GameBoard gameBoard = positions.get(i);
+				SearchResult result = search.search(depth, gameBoard, isAlphaToMove(gameBoard));
+				nodes += result.getNodes();
+				time += result.getTimeMillis();
+				if (result.getScore() == serial[i].getScore() && result.getBestMove() == serial[i].getBestMove()) {
+					same++;
+				}
+			}
+			search.shutdown();
+			System.out.printf("%-8d %12d %10d %12d %8.2f %5d/%d%n", threads, nodes, time,
+					time == 0 ? 0 : nodes * 1000 / time, time == 0 ? 0 : (double) serialTime / time,
+					same, positions.size());
+		}
+	}
+
+	/**
+	 * Prints the playouts per second of Monte Carlo tree search with 1
+	 * to maxThreads threads, then plays it against iterative deepening
+	 * PVS with the same time per move. Every position is played twice
+	 * so each engine gets both sides.
+	 */
+	private static void mctsReport(int millis, int maxThreads) {
+		List<GameBoard> positions = positions();
+		System.out.printf("%-8s %12s %12s%n", "threads", "playouts", "playouts/s");
+		for (int threads = 1; threads <= maxThreads; threads++) {
+			MonteCarloSearch search = new MonteCarloSearch(threads);
+			long playouts = 0, time = 0;
+			for (GameBoard gameBoard : positions) {
+				SearchResult result = search.search(gameBoard, isAlphaToMove(gameBoard), new SearchLimits(0, millis, 0));
+				playouts += result.getNodes();
+				time += result.getTimeMillis();
+			}
+			System.out.printf("%-8d %12d %12d%n", threads, playouts, time == 0 ? 0 : playouts * 1000 / time);
+		}
+
+		int wins = 0, draws = 0, losses = 0;
+		MonteCarloSearch search = new MonteCarloSearch(maxThreads);
+		for (GameBoard start : positions) {
+			for (int mctsColor = GameBoard.BLACK; mctsColor <= GameBoard.WHITE; mctsColor++) {
+				GameBoard gameBoard = new GameBoard(start);
+				Computer computer = new Computer(new TranspositionTable(64 << 20));
+				computer.setMoveOrdering(true);
+				computer.setAlgorithm(Computer.PVS);
+				computer.setThreads(maxThreads);
+				while (gameBoard.getResult() == GameBoard.IN_PROGRESS) {
+					boolean alphaPlayer = isAlphaToMove(gameBoard);
+					int color = alphaPlayer ? GameBoard.BLACK : GameBoard.WHITE;
+					SearchLimits limits = new SearchLimits(Computer.MAX_PLY, millis, 0);
+					SearchResult result = color == mctsColor ? search.search(gameBoard, alphaPlayer, limits)
+							: computer.iterativeDeepening(new GameBoard(gameBoard), alphaPlayer, limits);
+					gameBoard.makeMove(result.getBestMove(), color);
+				}
+				int result = gameBoard.getResult();
+				if (result == GameBoard.DRAW) {
+					draws++;
+				} else if (result == (mctsColor == GameBoard.BLACK ? GameBoard.BLACK_WINS : GameBoard.WHITE_WINS)) {
+					wins++;
+				} else {
+					losses++;
+				}
+			}
+		}
+		System.out.printf("mcts vs pvs at %d ms per move: %d wins %d draws %d losses%n", millis, wins, draws, losses);
+	}
+
+	/**
+	 * Builds positions where the player to move can win at once or has
+	 * to stop a win of the other player, by playing random moves until
+	 * one of them comes up.
+	 *
+	 * @return the positions.
+	 */
+	public static List<GameBoard> tacticalPositions() {
+		List<GameBoard> positions = new ArrayList<GameBoard>();
+		Random rand = new Random(SEED);
+		int[] moves = new int[GameBoard.MAX_MOVES];
+		while (positions.size() < NUM_POSITIONS) {
+			GameBoard gameBoard = new GameBoard();
+			gameBoard.setPlayer1color('B');
+			gameBoard.setPlayer2color('W');
+			for (int ply = 0; !gameBoard.isGameOver(); ply++) {
+				int color = ply % 2 == 0 ? GameBoard.BLACK : GameBoard.WHITE;
+				if (Threats.findWin(gameBoard, color, moves) != Move.NONE
+						|| Threats.findWin(gameBoard, 1 - color, moves) != Move.NONE) {
+					positions.add(gameBoard);
+					break;
+				}
+				int numMoves = gameBoard.generateMoves(moves, color);
+				gameBoard.makeMove(moves[rand.nextInt(numMoves)], color);
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Compares alpha-beta with and without the threat pre-pass on
+	 * tactical positions, and counts the moves after which the other
+	 * player can win at once, for the given depth and for depth 1.
+	 */
+	private static void threatsReport(int depth) {
+		System.out.printf("%-4s %12s %8s %12s %8s %6s%n", "pos", "nodes", "ms", "prepass", "ms", "same");
+		long totalPlain = 0, totalThreats = 0;
+		int numPosition = 0, blunders = 0, shallowBlunders = 0, shallowBlundersChecked = 0;
+		for (GameBoard gameBoard : tacticalPositions()) {
+			boolean alphaPlayer = isAlphaToMove(gameBoard);
+			int color = alphaPlayer ? GameBoard.BLACK : GameBoard.WHITE;
+			Computer plain = new Computer(new TranspositionTable(64 << 20));
+			plain.setMoveOrdering(true);
+			SearchResult plainResult = timedSearch(plain, gameBoard, alphaPlayer, depth);
+			Computer checked = new Computer(new TranspositionTable(64 << 20));
+			checked.setMoveOrdering(true);
+			checked.setThreatCheck(true);
+			SearchResult checkedResult = timedSearch(checked, gameBoard, alphaPlayer, depth);
+			totalPlain += plainResult.getNodes();
+			totalThreats += checkedResult.getNodes();
+			System.out.printf("%-4d %12d %8d %12d %8d %6s%n", numPosition++,
+					plainResult.getNodes(), plainResult.getTimeMillis(),
+					checkedResult.getNodes(), checkedResult.getTimeMillis(),
+					plainResult.getBestMove() == checkedResult.getBestMove() ? "yes" : "no");
+			if (losesAtOnce(gameBoard, plainResult.getBestMove(), color)) {
+				blunders++;
+			}
+			if (losesAtOnce(gameBoard, timedSearch(new Computer(), gameBoard, alphaPlayer, 1).getBestMove(), color)) {
+				shallowBlunders++;
+			}
+			Computer shallow = new Computer();
+			shallow.setThreatCheck(true);
+			if (losesAtOnce(gameBoard, timedSearch(shallow, gameBoard, alphaPlayer, 1).getBestMove(), color)) {
+				shallowBlundersChecked++;
+			}
+		}
+		System.out.printf("total %d -> %d nodes (%.1f%%)%n", totalPlain, totalThreats,
+				100.0 * totalThreats / totalPlain);
+		System.out.printf("moves that let the other player win at once: depth %d %d, depth 1 %d -> %d with the pre-pass%n",
+				depth, blunders, shallowBlunders, shallowBlundersChecked);
+	}
+
+	/**
+	 * Compares alpha-beta at the depth with quiescence against plain
+	 * alpha-beta at the depth and one deeper, on the benchmark and the
+	 * tactical positions. A move is counted as a mistake when it lets
+	 * the other player win at once while another move would not, or
+	 * when it misses a win.
+	 */
+	private static void quiescenceReport(int depth) {
+		List<GameBoard> positions = positions();
+		positions.addAll(tacticalPositions());
+		String[] names = {"depth " + depth, "depth " + (depth + 1), "depth " + depth + " + quiescence"};
+		long[] nodes = new long[3];
+		long[] time = new long[3];
+		int[] mistakes = new int[3];
+		int[] buffer = new int[GameBoard.MAX_MOVES];
+		for (GameBoard gameBoard : positions) {
+			boolean alphaPlayer = isAlphaToMove(gameBoard);
+			int color = alphaPlayer ? GameBoard.BLACK : GameBoard.WHITE;
+			int[] moves = new int[GameBoard.MAX_MOVES];
+			int numMoves = gameBoard.generateMoves(moves, color);
+			boolean canHold = Threats.removeLosingMoves(new GameBoard(gameBoard), moves, numMoves, color) > 0;
+			boolean canWin = Threats.findWin(gameBoard, color, buffer) != Move.NONE;
+			for (int i = 0; i < 3; i++) {
+				Computer computer = new Computer(new TranspositionTable(64 << 20));
+				computer.setMoveOrdering(true);
+				if (i == 2) {
+					computer.setQuiescence(2);
+				}
+				SearchResult result = timedSearch(computer, gameBoard, alphaPlayer, i == 1 ? depth + 1 : depth);
+				nodes[i] += result.getNodes();
+				time[i] += result.getTimeMillis();
+				GameBoard after = new GameBoard(gameBoard);
+				after.makeMove(result.getBestMove(), color);
+				boolean won = after.getResult() == (color == GameBoard.BLACK ? GameBoard.BLACK_WINS : GameBoard.WHITE_WINS);
+				if ((canWin && !won) || (!canWin && canHold && losesAtOnce(gameBoard, result.getBestMove(), color))) {
+					mistakes[i]++;
+				}
+			}
+		}
+		System.out.printf("%-28s %12s %8s %9s%n", "search", "nodes", "ms", "mistakes");
+		for (int i = 0; i < 3; i++) {
+			System.out.printf("%-28s %12d %8d %6d/%d%n", names[i], nodes[i], time[i], mistakes[i], positions.size());
+		}
+	}
+
+	/**
+	 * Compares full-width principal variation search with late move
+	 * reductions, futility pruning and both, all with move ordering, on
+	 * the benchmark and the tactical positions. Prints the nodes each
+	 * one searched and how often it found the same move and the same
+	 * score as the full-width search.
+	 */
+	private static void selectiveReport(int depth) {
+		List<GameBoard> positions = positions();
+		positions.addAll(tacticalPositions());
+		String[] names = {"full width", "late move reductions", "futility pruning", "both"};
+		long[] nodes = new long[4];
+		long[] time = new long[4];
+		int[] sameMove = new int[4];
+		int[] sameScore = new int[4];
+		for (GameBoard gameBoard : positions) {
+			boolean alphaPlayer = isAlphaToMove(gameBoard);
+			SearchResult full = null;
+			for (int i = 0; i < 4; i++) {
+				Computer computer = new Computer(new TranspositionTable(64 << 20));
+				computer.setMoveOrdering(true);
+				computer.setLateMoveReductions(i == 1 || i == 3);
+				computer.setFutilityPruning(i == 2 || i == 3);
+				long start = System.nanoTime();
+				SearchResult result = computer.principalVariationSearch(depth, new GameBoard(gameBoard), alphaPlayer);
+				time[i] += (System.nanoTime() - start) / 1000000;
+				nodes[i] += result.getNodes();
+				if (i == 0) {
+					full = result;
+				}
+				if (result.getBestMove() == full.getBestMove()) {
+					sameMove[i]++;
+				}
+				if (result.getScore() == full.getScore()) {
+					sameScore[i]++;
+				}
+			}
+		}
+		System.out.printf("%-22s %12s %8s %8s %9s %9s%n", "search", "nodes", "%", "ms", "move", "score");
+		for (int i = 0; i < 4; i++) {
+			System.out.printf("%-22s %12d %7.1f%% %8d %6d/%d %6d/%d%n", names[i], nodes[i],
+					100.0 * nodes[i] / nodes[0], time[i], sameMove[i], positions.size(),
+					sameScore[i], positions.size());
+		}
+	}
+
+	/**
+	 * Builds endgame positions by playing random moves until only the
+	 * given number of cells is empty. Games that end earlier are
+	 * skipped.
+	 *
+	 * @param emptyCells empty cells left in every position.
+	 * @return the positions.
+	 */
+	public static List<GameBoard> endgamePositions(int emptyCells) {
+		List<GameBoard> positions = new ArrayList<GameBoard>();
+		Random rand = new Random(SEED);
+		int[] moves = new int[GameBoard.MAX_MOVES];
+		while (positions.size() < NUM_POSITIONS) {
+			GameBoard gameBoard = new GameBoard();
+			gameBoard.setPlayer1color('B');
+			gameBoard.setPlayer2color('W');
+			for (int ply = 0; Long.bitCount(gameBoard.getEmptyBits()) > emptyCells && !gameBoard.isGameOver(); ply++) {
+				int color = ply % 2 == 0 ? GameBoard.BLACK : GameBoard.WHITE;
+				int numMoves = gameBoard.generateMoves(moves, color);
+				gameBoard.makeMove(moves[rand.nextInt(numMoves)], color);
+			}
+			if (!gameBoard.isGameOver()) {
+				positions.add(gameBoard);
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Solves endgame positions with the given number of empty cells
+	 * and prints the value, nodes and time of each solve. Every solve
+	 * starts with an empty table.
+	 */
+	private static void endgameReport(int emptyCells) {
+		System.out.printf("%-4s %8s %12s %8s%n", "pos", "value", "nodes", "ms");
+		long totalNodes = 0, totalTime = 0, maxTime = 0;
+		int numPosition = 0;
+		EndgameSolver solver = new EndgameSolver();
+		for (GameBoard gameBoard : endgamePositions(emptyCells)) {
+			boolean alphaPlayer = isAlphaToMove(gameBoard);
+			solver.clear();
+			long start = System.nanoTime();
+			SearchResult result = solver.solve(gameBoard, alphaPlayer);
+			long time = (System.nanoTime() - start) / 1000000;
+			int value = (alphaPlayer ? result.getScore() : -result.getScore()) / Computer.WIN_SCORE;
+			totalNodes += result.getNodes();
+			totalTime += time;
+			maxTime = Math.max(maxTime, time);
+			System.out.printf("%-4d %8s %12d %8d%n", numPosition++,
+					value == EndgameSolver.WIN ? "win" : value == EndgameSolver.DRAW ? "draw" : "loss",
+					result.getNodes(), time);
+		}
+		System.out.printf("total %d nodes %d ms, slowest %d ms%n", totalNodes, totalTime, maxTime);
+	}
+
+	/**
+	 * Proves or disproves a forced win for the player to move with
+	 * df-pn, and checks the result against the exact endgame solver
+	 * when that finishes within its node limit.
+	 */
+	private static void dfpnReport(int emptyCells) {
+		System.out.printf("%-4s %-14s %12s %8s %10s %7s %6s%n", "pos", "result", "nodes", "ms", "nodes/s", "table", "check");
+		long totalNodes = 0, totalTime = 0;
+		int numPosition = 0, wrong = 0;
+		ProofNumberSearch search = new ProofNumberSearch();
+		search.setNodeLimit(20000000);
+		EndgameSolver solver = new EndgameSolver();
+		solver.setNodeLimit(20000000);
+		for (GameBoard gameBoard : endgamePositions(emptyCells)) {
+			boolean alphaPlayer = isAlphaToMove(gameBoard);
+			ProofResult result = search.prove(gameBoard, alphaPlayer);
+			solver.clear();
+			SearchResult solved = solver.solve(gameBoard, alphaPlayer);
+			String check = "-";
+			if (solved != null && result.getResult() != ProofResult.UNKNOWN) {
+				boolean win = (alphaPlayer ? solved.getScore() : -solved.getScore()) == Computer.WIN_SCORE;
+				boolean ok = win == (result.getResult() == ProofResult.WIN);
+				if (ok && win) {
+					//the move has to win too.
+					GameBoard after = new GameBoard(gameBoard);
+					int color = GameBoard.colorIndex(alphaPlayer ? after.player1color : after.player2color);
+					after.makeMove(result.getBestMove(), color);
+					SearchResult reply = after.isGameOver() ? null : solver.solve(after, !alphaPlayer);
+					ok = reply == null
+							? after.getResult() == (color == GameBoard.BLACK ? GameBoard.BLACK_WINS : GameBoard.WHITE_WINS)
+							: (alphaPlayer ? reply.getScore() : -reply.getScore()) == Computer.WIN_SCORE;
+				}
+				check = ok ? "ok" : "WRONG";
+				if (!ok) {
+					wrong++;
+				}
+			}
+			String name = result.getResult() == ProofResult.WIN ? "win " + Move.toString(result.getBestMove())
+					: result.getResult() == ProofResult.NO_WIN ? "no win" : "unknown";
+			totalNodes += result.getNodes();
+			totalTime += result.getTimeMillis();
+			System.out.printf("%-4d %-14s %12d %8d %10d %6.1f%% %6s%n", numPosition++, name, result.getNodes(),
+					result.getTimeMillis(), result.getNodesPerSecond(), 100 * result.getTableUsage(), check);
+		}
+		System.out.printf("total %d nodes %d ms (%d nodes/s), %d collections, %d wrong%n", totalNodes, totalTime,
+				totalTime == 0 ? 0 : totalNodes * 1000 / totalTime, search.getCollections(), wrong);
+	}
+
+	/**
+	 * Whether Threats.removeLosingMoves drops the move: its rotation
+	 * makes a five for the other color, or leaves it a winning move.
+	 */
+	private static boolean losesAtOnce(GameBoard gameBoard, int move, int color) {
+		int[] moves = {move};
+		return Threats.removeLosingMoves(gameBoard, moves, 1, color) == 0;
+	}
+
+	/**
+	 * Runs a fixed depth alpha-beta search and times it.
+	 */
+	static SearchResult timedSearch(Computer computer, GameBoard gameBoard, boolean alphaPlayer, int depth) {
+		long start = System.nanoTime();
+		SearchResult result = computer.alphaBetaPrun(depth, new GameBoard(gameBoard), alphaPlayer,
+				Integer.MIN_VALUE, Integer.MAX_VALUE);
+		result.setTimeMillis((System.nanoTime() - start) / 1000000);
+		return result;
+	}
+}
@@ -1,4 +1,5 @@
-import java.util.List;
+import java.util.Arrays;
+import java.util.function.Consumer;
 
 /**
  * @author Tony
@@ -6,203 +7,1265 @@ import java.util.List;
  * This class is the artifical-intelligence that will be
  * playing against the human. Since it is random who goes
  * first, the AI is not always going to be alpha/max or the
- * beta/min player and same goes with the human.  
+ * beta/min player and same goes with the human.
  */
 public class Computer {
 
-	public int nodesExpanded;		//Number of nodes expanded.
+	//score of a won game from the max (alpha) player's point of view.
+	public static final int WIN_SCORE = 100000;
+	//bigger than any score, and safe to negate.
+	static final int INFINITY = 1000000;
+	//deepest the search can go. Every ply has its own move buffer.
+	public static final int MAX_PLY = 64;
+	
+	//search algorithms.
+	public static final int MINMAX = 0;
+	public static final int ALPHA_BETA = 1;
+	public static final int PVS = 2;
+	public static final int PARALLEL_ALPHA_BETA = 3;	//see ParallelSearch.
+	public static final int MCTS = 4;				//see MonteCarloSearch.
+	
+	//late move reductions: only nodes with this much depth left are reduced,
+	private static final int LMR_MIN_DEPTH = 3;
+	//and only after this many moves have been searched to the full depth.
+	private static final int LMR_FULL_MOVES = 4;
+	//plies taken off a late move, by depth left and move number.
+	private static final int[][] LMR_REDUCTION = new int[MAX_PLY + 1][GameBoard.MAX_MOVES];
+	//futility pruning: how much the heuristic may still gain, by depth left.
+	//On random positions a move gained more than 100 less than once in 100.
+	private static final int[] FUTILITY_MARGIN = {0, 100, 150};
+	
+	static {
+		for (int depth = 1; depth <= MAX_PLY; depth++) {
+			for (int i = 1; i < GameBoard.MAX_MOVES; i++) {
+				//grows with the log of both, and leaves at least 1 ply.
+				int reduction = (int) (0.5 + Math.log(depth) * Math.log(i) / 2);
+				LMR_REDUCTION[depth][i] = Math.max(1, Math.min(reduction, depth - 2));
+			}
+		}
+	}
+
+	public long nodesExpanded;		//Number of nodes expanded.
 	private GameBoard gameBoard;	//the state of the current gameboard.
-		
+	private TranspositionTable table;	//positions already searched, null if not used.
+	private final int[][] moveBuffers = new int[MAX_PLY][GameBoard.MAX_MOVES];
+	private int player1;			//bitboard index of player 1's color.
+	private int player2;			//bitboard index of player 2's color.
+	private int bestRootMove;		//best move found at the root of the current search.
+	private final long[] seenKeys = new long[GameBoard.MAX_MOVES];
+	private boolean rootSymmetryPruning = true;	//skip root moves that mirror an earlier one.
+	private boolean symmetricKeys;	//key the table by the canonical mirror image.
+	private int rootHint = Move.NONE;	//move searched first at the root.
+	private MoveOrderer orderer;	//sorts moves best first, null to search in generator order.
+	private int algorithm = ALPHA_BETA;	//algorithm used by iterativeDeepening.
+	private ParallelSearch parallelSearch;	//made by the first PARALLEL_ALPHA_BETA search, kept for the next.
+	private volatile MonteCarloSearch monteCarlo;	//made by the first MCTS search, its arena kept for the next.
+	private int threads = 1;		//threads used by iterativeDeepening.
+	private boolean threatCheck;	//look for immediate wins and forced blocks before searching.
+	private int quiescencePly;		//most forced moves searched past the depth, 0 for none.
+	private boolean lateMoveReductions;	//search late moves less deep in principalVariationSearch.
+	private boolean futilityPruning;	//skip quiet moves near the leaves that can not reach alpha.
+	private EndgameSolver solver;	//solves positions with few empty cells exactly, null if not used.
+	private int solverEmptyCells;	//most empty cells the solver takes over at.
+	private OpeningBook book;		//moves of the first few positions, null if not used.
+	private AnalysisCache cache;	//searched positions kept on disk between runs, null if not used.
+	private AnalysisCache.Batch cacheBatch;	//this computer's stores waiting to be written to the cache.
+	private RetrogradeTables retrograde;	//exact values of whole stone counts, null if not used.
+	private Consumer<SearchResult> iterationListener;	//told of each completed iteration, null for none.
+	private boolean restrictRoot;	//only search the root moves marked in safeRootMoves.
+	private final boolean[] safeRootMoves = new boolean[Move.LIMIT];
+	//principal variation of each ply: pvTable[ply][ply..pvLength[ply]-1].
+	private final int[][] pvTable = new int[MAX_PLY + 1][MAX_PLY + 1];
+	private final int[] pvLength = new int[MAX_PLY + 1];
+	
+	//budget of an iterative deepening search.
+	private boolean checkLimits;	//whether the budget is checked during the search.
+	private long deadline;			//System.nanoTime() to stop at, 0 for none.
+	private long nodeLimit;			//nodes to stop at, 0 for none.
+	private int limitCounter;		//the budget is only checked every 1024 nodes.
+	private boolean stopped;		//the budget ran out, so the current iteration is thrown away.
+	private volatile boolean stopRequested;	//set by stop() from another thread.
+	private Thread helperThread;	//thread running this computer when it is a Lazy SMP helper.
+
 	public Computer() {
 		//Default constructor
 	}
-	
+
+	/**
+	 * Constructor for a computer that remembers searched positions in
+	 * a transposition table. The table can be shared between computers
+	 * and between moves.
+	 *
+	 * @param table the transposition table.
+	 */
+	public Computer(TranspositionTable table) {
+		this.table = table;
+	}
+
 	public GameBoard getBoard() {
 		return gameBoard;
 	}
+
+	public TranspositionTable getTable() {
+		return table;
+	}
+	
+	/**
+	 * When on, root moves that lead to a mirror image of the result of
+	 * an earlier move are not searched. It is on by default.
+	 * 
+	 * @param rootSymmetryPruning whether to skip mirrored root moves.
+	 */
+	public void setRootSymmetryPruning(boolean rootSymmetryPruning) {
+		this.rootSymmetryPruning = rootSymmetryPruning;
+	}
+	
+	/**
+	 * When on, positions are stored in the transposition table under
+	 * the key of their canonical mirror image, so all 8 images of a
+	 * position share one entry. Computing the key costs more than the
+	 * zobrist hash.
+	 * 
+	 * @param symmetricKeys whether to use canonical keys.
+	 */
+	public void setSymmetricKeys(boolean symmetricKeys) {
+		this.symmetricKeys = symmetricKeys;
+	}
+	
+	/**
+	 * Turns move ordering on or off. When on, alphaBetaPrun tries the
+	 * table move first, then the killer moves of the ply, then the
+	 * rest by history. When off, moves are searched in generator order.
+	 * 
+	 * @param moveOrdering whether to order moves.
+	 */
+	public void setMoveOrdering(boolean moveOrdering) {
+		orderer = moveOrdering ? new MoveOrderer() : null;
+	}
+	
+	/**
+	 * Uses a move orderer that was kept from earlier searches, so its
+	 * history carries over.
+	 * 
+	 * @param orderer the move orderer, null to turn ordering off.
+	 */
+	public void setMoveOrderer(MoveOrderer orderer) {
+		this.orderer = orderer;
+	}
+	
+	public MoveOrderer getMoveOrderer() {
+		return orderer;
+	}
+	
+	/**
+	 * Chooses the algorithm iterativeDeepening runs: ALPHA_BETA or PVS,
+	 * or PARALLEL_ALPHA_BETA, which searches the depth of the limits at
+	 * once with ParallelSearch on setThreads threads, without a time or
+	 * node budget. MINMAX also searches the depth at once, and MCTS
+	 * plays MonteCarloSearch games on setThreads threads for the time or
+	 * node budget, without using the depth.
+	 * 
+	 * @param algorithm the search algorithm.
+	 * @throws IllegalArgumentException if it is not one of them.
+	 */
+	public void setAlgorithm(int algorithm) {
+		if (algorithm < MINMAX || algorithm > MCTS) {
+			throw new IllegalArgumentException("unknown algorithm " + algorithm);
+		}
+		this.algorithm = algorithm;
+	}
+	
+	public int getAlgorithm() {
+		return algorithm;
+	}
+	
+	/**
+	 * Sets how many threads iterativeDeepening searches with (Lazy
+	 * SMP). Every extra thread is a helper that searches its own copy
+	 * of the gameboard, and all of them share the transposition table,
+	 * so the helpers fill the table with results the main thread can
+	 * use. Needs a transposition table to help.
+	 * 
+	 * @param threads number of threads, at least 1.
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+	
+	public int getThreads() {
+		return threads;
+	}
+	
+	/**
+	 * Turns the threat pre-pass on or off. When on, a move that wins at
+	 * once is played without searching, and when the other player
+	 * threatens to win with their next move only the moves that stop
+	 * it are searched. It is off by default.
+	 * 
+	 * @param threatCheck whether to look for threats before searching.
+	 */
+	public void setThreatCheck(boolean threatCheck) {
+		this.threatCheck = threatCheck;
+	}
+	
+	/**
+	 * Turns the quiescence search of alphaBetaPrun and
+	 * principalVariationSearch on or off. When on, a position at the
+	 * depth is only scored by the heuristic if the player to move can
+	 * not win at once and is not forced to stop a five of the other
+	 * player. It is off by default.
+	 * 
+	 * @param quiescencePly most forced moves to search past the depth,
+	 * 0 to turn it off.
+	 */
+	public void setQuiescence(int quiescencePly) {
+		this.quiescencePly = quiescencePly;
+	}
+	
+	/**
+	 * Turns late move reductions in principalVariationSearch on or off.
+	 * When on, the moves that come late in the move order are searched
+	 * a ply or more less deep with a zero window, and only a move that
+	 * beats alpha there is searched again to the full depth. Moves that
+	 * make a five or threaten one are not reduced. It is off by default.
+	 * 
+	 * @param lateMoveReductions whether to reduce late moves.
+	 */
+	public void setLateMoveReductions(boolean lateMoveReductions) {
+		this.lateMoveReductions = lateMoveReductions;
+	}
+	
+	/**
+	 * Turns futility pruning in principalVariationSearch on or off.
+	 * When on, a node with 1 or 2 plies left whose heuristic value is
+	 * so far below alpha that no move is likely to make it up only
+	 * searches its first move and the moves that make a five or
+	 * threaten one. It is off by default.
+	 * 
+	 * @param futilityPruning whether to prune futile moves.
+	 */
+	public void setFutilityPruning(boolean futilityPruning) {
+		this.futilityPruning = futilityPruning;
+	}
+
+	/**
+	 * Lets an endgame solver take over from the search. When the game
+	 * has no more than the given number of empty cells left, every
+	 * algorithm plays the move the solver finds instead of searching,
+	 * with a score of WIN_SCORE, 0 or -WIN_SCORE. If the solver runs
+	 * into its node limit the search is run as usual. The solver's
+	 * table can be kept from one move to the next.
+	 * 
+	 * @param solver the endgame solver, null to turn it off.
+	 * @param emptyCells most empty cells to solve at.
+	 */
+	public void setEndgameSolver(EndgameSolver solver, int emptyCells) {
+		this.solver = solver;
+		this.solverEmptyCells = emptyCells;
+	}
+	
+	/**
+	 * Sets the opening book. When the position is in the book, every
+	 * algorithm plays the book move instead of searching, with the
+	 * score and depth it was searched to when the book was built.
+	 * 
+	 * @param book the opening book, null to turn it off.
+	 */
+	public void setOpeningBook(OpeningBook book) {
+		this.book = book;
+	}
+	
+	/**
+	 * Sets the tables computed by RetrogradeSolver. When the positions
+	 * after the next move are in the tables, every algorithm plays the
+	 * move with the best value instead of searching, with a score of
+	 * WIN_SCORE, 0 or -WIN_SCORE.
+	 * 
+	 * @param retrograde the retrograde tables, null to turn them off.
+	 */
+	public void setRetrogradeTables(RetrogradeTables retrograde) {
+		this.retrograde = retrograde;
+	}
+	
+	/**
+	 * Sets the analysis cache. Alpha beta and PVS look up every
+	 * position searched at least AnalysisCache.MIN_DEPTH deep in it
+	 * before searching it, and store it there afterwards.
+	 * 
+	 * @param cache the analysis cache, null to turn it off.
+	 */
+	public void setAnalysisCache(AnalysisCache cache) {
+		this.cache = cache;
+		this.cacheBatch = cache == null ? null : cache.newBatch();
+	}
+	
+	/**
+	 * Sets a listener that iterativeDeepening calls on its own thread
+	 * after each completed iteration, with the result so far. The
+	 * result is reused by the next iteration, so the listener has to
+	 * read it before returning.
+	 * 
+	 * @param iterationListener the listener, null for none.
+	 */
+	public void setIterationListener(Consumer<SearchResult> iterationListener) {
+		this.iterationListener = iterationListener;
+	}
+	
+	/**
+	 * Asks a running iterative deepening search to stop. It returns
+	 * the result of the last iteration it completed. The request stays
+	 * until clearStop, so a stop() that comes before the search starts
+	 * is not lost.
+	 */
+	public void stop() {
+		stopRequested = true;
+		MonteCarloSearch search = monteCarlo;
+		if (search != null) {
+			search.stop();
+		}
+	}
+	
+	/**
+	 * Takes back a stop(). Whoever starts a search on another thread
+	 * calls it before starting it, not the search itself.
+	 */
+	public void clearStop() {
+		stopRequested = false;
+		MonteCarloSearch search = monteCarlo;
+		if (search != null) {
+			search.clearStop();
+		}
+	}
+	
+	/**
+	 * Checks whether the search is out of time or nodes. It is only
+	 * checked every 1024 nodes, since reading the clock costs more than
+	 * a node.
+	 * 
+	 * @return whether the search has to stop.
+	 */
+	private boolean outOfBudget() {
+		if (!checkLimits || (++limitCounter & 1023) != 0) {
+			return false;
+		}
+		if (stopRequested
+				|| (deadline > 0 && System.nanoTime() > deadline)
+				|| (nodeLimit > 0 && nodesExpanded >= nodeLimit)) {
+			stopped = true;
+		}
+		return stopped;
+	}
+	
+	/**
+	 * Searches depth 1, 2, 3... until the depth, time or node limit
+	 * is reached. The best move of each iteration is searched first in
+	 * the next one. An iteration cut short by the budget is thrown
+	 * away and the result of the last completed iteration is returned,
+	 * so the first iteration is always allowed to finish. A new
+	 * iteration is not started when half of the time is already used,
+	 * since it would take longer than everything before it.
+	 * With more than one thread, helper threads search alongside
+	 * (see setThreads). The move still comes from the iterations of the
+	 * calling thread, and the node budget counts only its nodes.
+	 * PARALLEL_ALPHA_BETA, MINMAX and MCTS run the book, the tables, the
+	 * endgame solver and the threat pre-pass first, then their own
+	 * search once (see setAlgorithm).
+	 * 
+	 * @param gameBoard the gameboard to search.
+	 * @param alphaPlayer whether the AI is an alpha player.
+	 * @param limits the budget of the search.
+	 * @return the result of the deepest completed iteration.
+	 */
+	public SearchResult iterativeDeepening(GameBoard gameBoard, boolean alphaPlayer, SearchLimits limits) {
+		SearchResult result = new SearchResult();
+		long start = System.nanoTime();
+		deadline = limits.getTimeMillis() > 0 ? start + limits.getTimeMillis() * 1000000 : 0;
+		nodeLimit = limits.getNodes();
+		nodesExpanded = 0;
+		stopped = false;
+		startSearch(gameBoard);
+		if (table != null) {
+			table.newSearch();
+		}
+		int maxDepth = Math.min(limits.getDepth(), Math.min(MAX_PLY - 1, Long.bitCount(gameBoard.getEmptyBits())));
+		SearchResult forced = preSearch(alphaPlayer, maxDepth);
+		if (forced != null) {
+			forced.setTimeMillis((System.nanoTime() - start) / 1000000);
+			return forced;
+		}
+		if (algorithm == PARALLEL_ALPHA_BETA) {
+			if (parallelSearch == null || parallelSearch.getParallelism() != threads) {
+				if (parallelSearch != null) {
+					parallelSearch.shutdown();
+				}
+				parallelSearch = new ParallelSearch(threads);
+			}
+			result = parallelSearch.search(maxDepth, gameBoard, alphaPlayer);
+			result.setTimeMillis((System.nanoTime() - start) / 1000000);
+			return result;
+		}
+		if (algorithm == MCTS) {
+			if (monteCarlo == null || monteCarlo.getThreads() != threads) {
+				monteCarlo = new MonteCarloSearch(threads);
+				if (stopRequested) {
+					//stop() came before there was a search to pass it to.
+					monteCarlo.stop();
+				}
+			}
+			result = monteCarlo.search(gameBoard, alphaPlayer, limits);
+			result.setTimeMillis((System.nanoTime() - start) / 1000000);
+			return result;
+		}
+		if (algorithm == MINMAX) {
+			int score = minMax(maxDepth, 0, alphaPlayer);
+			finishSearch(result, score, maxDepth);
+			result.setTimeMillis((System.nanoTime() - start) / 1000000);
+			return result;
+		}
+		Computer[] helpers = startHelpers(gameBoard, alphaPlayer, maxDepth);
+		for (int depth = 1; depth <= maxDepth; depth++) {
+			checkLimits = depth > 1;
+			int score = searchRoot(depth, alphaPlayer);
+			if (stopped) {
+				break;
+			}
+			finishSearch(result, score, depth);
+			if (algorithm == PVS) {
+				result.setPrincipalVariation(Arrays.copyOf(pvTable[0], pvLength[0]));
+			}
+			if (iterationListener != null) {
+				result.setTimeMillis((System.nanoTime() - start) / 1000000);
+				iterationListener.accept(result);
+			}
+			rootHint = bestRootMove;
+			if (Math.abs(score) >= WIN_SCORE
+					|| (deadline > 0 && (System.nanoTime() - start) * 2 > deadline - start)
+					|| (nodeLimit > 0 && nodesExpanded >= nodeLimit)) {
+				break;
+			}
+		}
+		checkLimits = false;
+		rootHint = Move.NONE;
+		result.setNodes(nodesExpanded + stopHelpers(helpers));
+		commitCache();
+		result.setTimeMillis((System.nanoTime() - start) / 1000000);
+		return result;
+	}
+	
+	/**
+	 * Searches the root once with the chosen algorithm.
+	 * 
+	 * @return the score from the max (alpha) player's point of view.
+	 */
+	private int searchRoot(int depth, boolean alphaPlayer) {
+		bestRootMove = Move.NONE;
+		if (algorithm == PVS) {
+			int score = principalVariation(depth, 0, alphaPlayer, -INFINITY, INFINITY);
+			return alphaPlayer ? score : -score;
+		}
+		return alphaBetaPrun(depth, 0, alphaPlayer, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Starts the Lazy SMP helper threads. Each helper has its own
+	 * gameboard copy, move buffers and move orderer. Every second
+	 * helper starts one depth deeper than the main thread, so the
+	 * threads are not all searching the same tree in the same order.
+	 * 
+	 * @return the helpers, empty when the search is single-threaded.
+	 */
+	private Computer[] startHelpers(GameBoard gameBoard, boolean alphaPlayer, int maxDepth) {
+		if (threads == 1 || table == null) {
+			return new Computer[0];
+		}
+		Computer[] helpers = new Computer[threads - 1];
+		for (int i = 0; i < helpers.length; i++) {
+			Computer helper = new Computer(table);
+			helper.algorithm = algorithm;
+			helper.symmetricKeys = symmetricKeys;
+			helper.rootSymmetryPruning = rootSymmetryPruning;
+			helper.quiescencePly = quiescencePly;
+			helper.lateMoveReductions = lateMoveReductions;
+			helper.futilityPruning = futilityPruning;
+			helper.setAnalysisCache(cache);
+			helper.orderer = orderer == null ? null : new MoveOrderer();
+			helpers[i] = helper;
+			GameBoard copy = new GameBoard(gameBoard);
+			int firstDepth = 1 + (i + 1) % 2;
+			helper.helperThread = new Thread(() -> helper.helperSearch(copy, alphaPlayer, firstDepth, maxDepth),
+					"search-helper-" + (i + 1));
+			helper.helperThread.setDaemon(true);
+			helper.helperThread.start();
+		}
+		return helpers;
+	}
 	
+	/**
+	 * The search of a helper thread: iterative deepening without a
+	 * budget until the main thread stops it. Its results only reach the
+	 * main thread through the transposition table.
+	 */
+	private void helperSearch(GameBoard gameBoard, boolean alphaPlayer, int firstDepth, int maxDepth) {
+		nodesExpanded = 0;
+		startSearch(gameBoard);
+		checkLimits = true;
+		for (int depth = firstDepth; depth <= maxDepth && !stopped; depth++) {
+			searchRoot(depth, alphaPlayer);
+			if (!stopped) {
+				rootHint = bestRootMove;
+			}
+		}
+		commitCache();
+	}
+	
+	/**
+	 * Stops the helper threads and waits for them to finish.
+	 * 
+	 * @return the number of nodes the helpers expanded.
+	 */
+	private long stopHelpers(Computer[] helpers) {
+		long nodes = 0;
+		for (Computer helper : helpers) {
+			helper.stop();
+		}
+		for (Computer helper : helpers) {
+			try {
+				helper.helperThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			nodes += helper.nodesExpanded;
+		}
+		return nodes;
+	}
+	
+	/**
+	 * Moves the hint to the front of the moves, keeping the order of
+	 * the others.
+	 */
+	private static void moveToFront(int[] moves, int numMoves, int hint) {
+		for (int i = 0; i < numMoves; i++) {
+			if (moves[i] == hint) {
+				System.arraycopy(moves, 0, moves, 1, i);
+				moves[0] = hint;
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Points the computer at the gameboard it is about to search.
+	 *
+	 * @param gameBoard the gameboard to search.
+	 */
+	private void startSearch(GameBoard gameBoard) {
+		this.gameBoard = gameBoard;
+		player1 = GameBoard.colorIndex(gameBoard.player1color);
+		player2 = GameBoard.colorIndex(gameBoard.player2color);
+		bestRootMove = Move.NONE;
+		stopped = false;
+	}
+
+	/**
+	 * Runs before a search: the opening book, the retrograde tables,
+	 * the endgame solver when few enough cells are empty, and the threat
+	 * pre-pass when none of them has the move.
+	 * 
+	 * @return the result of a move to play without searching, null to
+	 * search.
+	 */
+	private SearchResult preSearch(boolean alphaPlayer, int depth) {
+		if (book != null) {
+			SearchResult booked = book.probe(gameBoard, alphaPlayer);
+			if (booked != null) {
+				bestRootMove = booked.getBestMove();
+				booked.setNodes(nodesExpanded);
+				return booked;
+			}
+		}
+		if (retrograde != null) {
+			SearchResult probed = retrograde.probe(gameBoard, alphaPlayer);
+			if (probed != null) {
+				bestRootMove = probed.getBestMove();
+				probed.setNodes(nodesExpanded);
+				return probed;
+			}
+		}
+		SearchResult solved = solveEndgame(alphaPlayer);
+		return solved != null ? solved : checkThreats(alphaPlayer, depth);
+	}
+	
+	/**
+	 * Solves the position with the endgame solver if it is turned on
+	 * and few enough cells are empty.
+	 * 
+	 * @return the solved result, null when the position was not solved.
+	 */
+	private SearchResult solveEndgame(boolean alphaPlayer) {
+		if (solver == null || gameBoard.getResult() != GameBoard.IN_PROGRESS
+				|| Long.bitCount(gameBoard.getEmptyBits()) > solverEmptyCells) {
+			return null;
+		}
+		SearchResult result = solver.solve(gameBoard, alphaPlayer);
+		nodesExpanded += solver.getNodes();
+		if (result != null) {
+			bestRootMove = result.getBestMove();
+			result.setNodes(nodesExpanded);
+		}
+		return result;
+	}
+	
+	/**
+	 * The threat pre-pass, run before a search. A move that wins at
+	 * once is played without searching. When the other player could
+	 * win with their next move, the root is restricted to the moves
+	 * that stop every such win, and if only one does it is played
+	 * without searching. When none does, every move is searched.
+	 * 
+	 * @param alphaPlayer whether the AI is an alpha player.
+	 * @param depth the depth of the search, for the score of a win.
+	 * @return the result of a move to play without searching, null to
+	 * search.
+	 */
+	private SearchResult checkThreats(boolean alphaPlayer, int depth) {
+		restrictRoot = false;
+		if (!threatCheck || gameBoard.getResult() != GameBoard.IN_PROGRESS) {
+			return null;
+		}
+		int color = alphaPlayer ? player1 : player2;
+		int[] moves = moveBuffers[0];
+		int move = Threats.findWin(gameBoard, color, moves);
+		if (move == Move.NONE) {
+			if (Threats.findWin(gameBoard, alphaPlayer ? player2 : player1, moves) == Move.NONE) {
+				return null;
+			}
+			int numMoves = gameBoard.generateMoves(moves, color);
+			numMoves = Threats.removeLosingMoves(gameBoard, moves, numMoves, color);
+			if (numMoves != 1) {
+				Arrays.fill(safeRootMoves, false);
+				for (int i = 0; i < numMoves; i++) {
+					safeRootMoves[moves[i]] = true;
+				}
+				restrictRoot = numMoves > 1;
+				return null;
+			}
+			move = moves[0];
+		}
+		//score it the way a one ply search would.
+		gameBoard.makeMove(move, color);
+		int result = gameBoard.getResult();
+		int score = result != GameBoard.IN_PROGRESS ? terminalScore(gameBoard, result, depth - 1)
+				: gameBoard.getHeuristicValue(!alphaPlayer);
+		gameBoard.unmakeMove(move, color);
+		nodesExpanded++;
+		bestRootMove = move;
+		return finishSearch(new SearchResult(), score, 1);
+	}
+	
+	/**
+	 * Keeps the root moves the threat pre-pass marked as safe, in
+	 * their order.
+	 */
+	private int keepSafeRootMoves(int[] moves, int numMoves) {
+		int count = 0;
+		for (int i = 0; i < numMoves; i++) {
+			if (safeRootMoves[moves[i]]) {
+				moves[count++] = moves[i];
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Copies the outcome of a search into the result.
+	 */
+	private SearchResult finishSearch(SearchResult result, int score, int depth) {
+		result.setScore(score);
+		result.setBestMove(bestRootMove);
+		result.setDepth(depth);
+		result.setNodes(nodesExpanded);
+		return result;
+	}
+
 	/**
 	 * The alpha-beta-pruning algorithm that the AI will follow
 	 * to play the best move possible against the human. The
-	 * strength of the AI depends on the depth which is the 
+	 * strength of the AI depends on the depth which is the
 	 * number of moves that the computer can foresee.
-	 * 
+	 *
 	 * @param depth number of moves that the computer can foresee.
 	 * @param gameBoard the future gameboard states.
 	 * @param alphaPlayer whether the AI is an alpha player.
 	 * @param alpha the heuristic score of alpha player.
 	 * @param beta the heuristic score of beta player.
-	 * @return returns the coordinates of intelligent move.
+	 * @return returns the score and the intelligent move.
 	 */
-	public int[] alphaBetaPrun(int depth, GameBoard gameBoard,
+	public SearchResult alphaBetaPrun(int depth, GameBoard gameBoard,
 					boolean alphaPlayer, int alpha, int beta) {
-		int heuristicValue = 0;
-		int bestRow = -1;
-		int bestCol = -1;
-		int bestBlock = -1;
-		int bestDir = -1;
-		int row, col, block, dir;
-		int compCount = 1;
-		int humCount = 1;
-		List<int[]> nextMoves = gameBoard.getChildren(alphaPlayer);
+		startSearch(gameBoard);
+		SearchResult forced = preSearch(alphaPlayer, depth);
+		if (forced != null) {
+			return forced;
+		}
+		if (table != null) {
+			table.newSearch();
+		}
+		int score = alphaBetaPrun(depth, 0, alphaPlayer, alpha, beta);
+		commitCache();
+		return finishSearch(new SearchResult(), score, depth);
+	}
+
+	/**
+	 * The recursive part of alphaBetaPrun. Below the root a position
+	 * that is already in the transposition table with enough depth is
+	 * answered from the table instead of being searched again. Moves
+	 * are generated into the buffer of this ply and made and unmade on
+	 * the one gameboard, so nothing is allocated per node.
+	 *
+	 * @param ply how many moves deep this position is from the root.
+	 * @return the score of the position.
+	 */
+	private int alphaBetaPrun(int depth, int ply, boolean alphaPlayer, int alpha, int beta) {
+		int heuristicValue;
+		int bestMove = Move.NONE;
+		int result = gameBoard.getResult();
+		if (result != GameBoard.IN_PROGRESS) {
+			nodesExpanded++;
+			return terminalScore(gameBoard, result, depth);
+		}
+		if (depth == 0 || ply == MAX_PLY) {
+			if (quiescencePly > 0) {
+				return quiescence(0, ply, alphaPlayer, alpha, beta);
+			}
+			nodesExpanded++;
+			return gameBoard.getHeuristicValue(alphaPlayer);
+		}
+
+		long key = 0;
+		int transform = 0;	//maps this board onto the one the table entry is stored for.
+		if (table != null) {
+			if (symmetricKeys) {
+				long canonical = Symmetry.canonical(gameBoard);
+				transform = Symmetry.getTransform(canonical);
+				key = Symmetry.hashKey(Symmetry.getKey(canonical));
+			} else {
+				key = gameBoard.getHash();
+			}
+			if (alphaPlayer) {
+				key ^= GameBoard.ALPHA_TO_MOVE_KEY;
+			}
+		}
+		int hashMove = Move.NONE;
+		if (table != null) {
+			long entry = table.probe(key);
+			if (entry != 0) {
+				hashMove = Symmetry.transformMove(TranspositionTable.getMove(entry), Symmetry.inverse(transform));
+			}
+			if (entry != 0 && ply > 0 && TranspositionTable.getDepth(entry) >= depth) {
+				int score = TranspositionTable.getScore(entry);
+				int bound = TranspositionTable.getBound(entry);
+				if (bound == TranspositionTable.EXACT
+						|| (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+						|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+					table.recordCutoff();
+					return score;
+				}
+			}
+		}
+		long canonical = -1;	//the position's key in the analysis cache, -1 if it is not used.
+		if (cache != null && depth >= AnalysisCache.MIN_DEPTH) {
+			canonical = Symmetry.canonical(gameBoard);
+			long entry = cache.probe(cacheKey(canonical, alphaPlayer));
+			if (entry != 0) {
+				if (hashMove == Move.NONE) {
+					hashMove = Symmetry.transformMove(TranspositionTable.getMove(entry),
+							Symmetry.inverse(Symmetry.getTransform(canonical)));
+				}
+				if (ply > 0 && TranspositionTable.getDepth(entry) >= depth) {
+					int score = TranspositionTable.getScore(entry);
+					int bound = TranspositionTable.getBound(entry);
+					if (bound == TranspositionTable.EXACT
+							|| (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+							|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+						cache.recordCutoff();
+						return score;
+					}
+				}
+			}
+		}
+		if (stopped || outOfBudget()) {
+			return 0;
+		}
+		int alphaOrig = alpha;
+		int betaOrig = beta;
+		int[] moves = moveBuffers[ply];
+		int color = alphaPlayer ? player1 : player2;
+		int numMoves = gameBoard.generateMoves(moves, color);
+		if (ply == 0 && rootSymmetryPruning) {
+			numMoves = Symmetry.removeSymmetricMoves(gameBoard, moves, numMoves, color, seenKeys);
+		}
+		if (ply == 0 && restrictRoot) {
+			numMoves = keepSafeRootMoves(moves, numMoves);
+		}
+		if (orderer != null) {
+			orderer.order(moves, numMoves, ply, color, ply == 0 && rootHint != Move.NONE ? rootHint : hashMove);
+		} else if (ply == 0 && rootHint != Move.NONE) {
+			moveToFront(moves, numMoves, rootHint);
+		}
+
+		for (int i = 0; i < numMoves; i++) {
+			int move = moves[i];
+			gameBoard.makeMove(move, color);
+			heuristicValue = alphaBetaPrun(depth - 1, ply + 1, !alphaPlayer, alpha, beta);
+			nodesExpanded++;
+			gameBoard.unmakeMove(move, color);
+			if (stopped) {
+				return 0;
+			}
+			if (alphaPlayer) {  // max player (alpha)
+				if (heuristicValue > alpha) {
+					alpha = heuristicValue;
+					bestMove = move;
+				}
+			} else {  // min player (beta)
+				if (heuristicValue < beta) {
+					beta = heuristicValue;
+					bestMove = move;
+				}
+			}
+			//prune off branch
+			if (alpha >= beta) {
+				if (orderer != null) {
+					orderer.recordCutoff(move, ply, color, depth);
+				}
+				break;
+			}
+		}
+		int value = alphaPlayer ? alpha : beta;
+		if (ply == 0) {
+			bestRootMove = bestMove;
+		}
+		int bound = TranspositionTable.EXACT;
+		if (value <= alphaOrig) {
+			bound = TranspositionTable.UPPER_BOUND;
+		} else if (value >= betaOrig) {
+			bound = TranspositionTable.LOWER_BOUND;
+		}
+		if (table != null) {
+			table.store(key, depth, bound, value, Symmetry.transformMove(bestMove, transform));
+		}
+		if (canonical >= 0) {
+			cacheBatch.store(cacheKey(canonical, alphaPlayer), depth, bound, value,
+					Symmetry.transformMove(bestMove, Symmetry.getTransform(canonical)));
+		}
+		return value;
+	}
+
+	/**
+	 * Principal variation search. It is a negamax alpha-beta: scores
+	 * are from the point of view of the player to move, so the alpha and
+	 * beta players share one branch and one undo. The first move of a
+	 * node is searched with the full window. The others are searched
+	 * with a zero window that only asks whether they beat the best
+	 * move so far, and only a move that does is searched again with
+	 * the full window. With good move ordering most moves fail that
+	 * cheap test. The score of the result is from the max (alpha)
+	 * player's point of view like the other algorithms.
+	 * 
+	 * @param depth number of moves that the computer can foresee.
+	 * @param gameBoard the future gameboard states.
+	 * @param alphaPlayer whether the AI is an alpha player.
+	 * @return returns the score, the intelligent move and the moves
+	 * both players are expected to play after it.
+	 */
+	public SearchResult principalVariationSearch(int depth, GameBoard gameBoard, boolean alphaPlayer) {
+		startSearch(gameBoard);
+		SearchResult forced = preSearch(alphaPlayer, depth);
+		if (forced != null) {
+			return forced;
+		}
+		if (table != null) {
+			table.newSearch();
+		}
+		int score = principalVariation(depth, 0, alphaPlayer, -INFINITY, INFINITY);
+		commitCache();
+		SearchResult result = finishSearch(new SearchResult(), alphaPlayer ? score : -score, depth);
+		result.setPrincipalVariation(Arrays.copyOf(pvTable[0], pvLength[0]));
+		return result;
+	}
+	
+	/**
+	 * The recursive part of principalVariationSearch.
+	 * 
+	 * @param ply how many moves deep this position is from the root.
+	 * @return the score of the position for the player to move.
+	 */
+	private int principalVariation(int depth, int ply, boolean alphaPlayer, int alpha, int beta) {
+		pvLength[ply] = ply;
+		int result = gameBoard.getResult();
+		if (result != GameBoard.IN_PROGRESS) {
+			nodesExpanded++;
+			int score = terminalScore(gameBoard, result, depth);
+			return alphaPlayer ? score : -score;
+		}
+		if (depth == 0 || ply == MAX_PLY) {
+			int score;
+			if (quiescencePly > 0) {
+				score = alphaPlayer ? quiescence(0, ply, true, alpha, beta) : quiescence(0, ply, false, -beta, -alpha);
+			} else {
+				nodesExpanded++;
+				score = gameBoard.getHeuristicValue(alphaPlayer);
+			}
+			return alphaPlayer ? score : -score;
+		}
+		
+		long key = 0;
+		int transform = 0;
+		int hashMove = Move.NONE;
+		if (table != null) {
+			if (symmetricKeys) {
+				long canonical = Symmetry.canonical(gameBoard);
+				transform = Symmetry.getTransform(canonical);
+				key = Symmetry.hashKey(Symmetry.getKey(canonical));
+			} else {
+				key = gameBoard.getHash();
+			}
+			if (alphaPlayer) {
+				key ^= GameBoard.ALPHA_TO_MOVE_KEY;
+			}
+			long entry = table.probe(key);
+			if (entry != 0) {
+				hashMove = Symmetry.transformMove(TranspositionTable.getMove(entry), Symmetry.inverse(transform));
+				//no cutoffs in the full window nodes, which would cut the principal variation short.
+				if (ply > 0 && beta - alpha == 1 && TranspositionTable.getDepth(entry) >= depth) {
+					//the table holds scores from the alpha player's point of view.
+					int score = TranspositionTable.getScore(entry);
+					int bound = relativeBound(TranspositionTable.getBound(entry), alphaPlayer);
+					score = alphaPlayer ? score : -score;
+					if (bound == TranspositionTable.EXACT
+							|| (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+							|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+						table.recordCutoff();
+						return score;
+					}
+				}
+			}
+		}
+		long canonical = -1;	//the position's key in the analysis cache, -1 if it is not used.
+		if (cache != null && depth >= AnalysisCache.MIN_DEPTH) {
+			canonical = Symmetry.canonical(gameBoard);
+			long entry = cache.probe(cacheKey(canonical, alphaPlayer));
+			if (entry != 0) {
+				if (hashMove == Move.NONE) {
+					hashMove = Symmetry.transformMove(TranspositionTable.getMove(entry),
+							Symmetry.inverse(Symmetry.getTransform(canonical)));
+				}
+				//as with the table, no cutoffs in the full window nodes.
+				if (ply > 0 && beta - alpha == 1 && TranspositionTable.getDepth(entry) >= depth) {
+					int score = TranspositionTable.getScore(entry);
+					int bound = relativeBound(TranspositionTable.getBound(entry), alphaPlayer);
+					score = alphaPlayer ? score : -score;
+					if (bound == TranspositionTable.EXACT
+							|| (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+							|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+						cache.recordCutoff();
+						return score;
+					}
+				}
+			}
+		}
+		if (stopped || outOfBudget()) {
+			return 0;
+		}
+		
+		int alphaOrig = alpha;
+		int[] moves = moveBuffers[ply];
+		int color = alphaPlayer ? player1 : player2;
+		int numMoves = gameBoard.generateMoves(moves, color);
+		if (ply == 0 && rootSymmetryPruning) {
+			numMoves = Symmetry.removeSymmetricMoves(gameBoard, moves, numMoves, color, seenKeys);
+		}
+		if (ply == 0 && restrictRoot) {
+			numMoves = keepSafeRootMoves(moves, numMoves);
+		}
+		if (orderer != null) {
+			orderer.order(moves, numMoves, ply, color, ply == 0 && rootHint != Move.NONE ? rootHint : hashMove);
+		} else if (ply == 0 && rootHint != Move.NONE) {
+			moveToFront(moves, numMoves, rootHint);
+		}
+		
+		//selective search is only safe when neither player can win at once.
+		boolean quiet = (lateMoveReductions && depth >= LMR_MIN_DEPTH)
+				|| (futilityPruning && ply > 0 && depth < FUTILITY_MARGIN.length);
+		if (quiet) {
+			long mine = gameBoard.getBits(color);
+			long theirs = gameBoard.getBits(alphaPlayer ? player2 : player1);
+			quiet = !Threats.hasWin(mine, theirs) && !Threats.hasWin(theirs, mine);
+		}
+		int futilityScore = INFINITY;
+		if (quiet && futilityPruning && ply > 0 && depth < FUTILITY_MARGIN.length) {
+			//the heuristic as the leaves below will see it.
+			boolean leafPlayer = depth % 2 == 0 ? alphaPlayer : !alphaPlayer;
+			int staticScore = gameBoard.getHeuristicValue(leafPlayer);
+			staticScore = alphaPlayer ? staticScore : -staticScore;
+			if (staticScore + FUTILITY_MARGIN[depth] <= alpha) {
+				futilityScore = staticScore + FUTILITY_MARGIN[depth];
+			}
+		}
+		boolean reduce = quiet && lateMoveReductions && depth >= LMR_MIN_DEPTH;
 		
-		if(depth == 0 || nextMoves.isEmpty()) {
+		int bestScore = -INFINITY;
+		int bestMove = Move.NONE;
+		for (int i = 0; i < numMoves; i++) {
+			int move = moves[i];
+			int score;
+			gameBoard.makeMove(move, color);
+			boolean forcing = (futilityScore != INFINITY || (reduce && i >= LMR_FULL_MOVES)) && isForcing(color);
+			if (i > 0 && futilityScore != INFINITY && !forcing) {
+				//futile: counted as if it scored the margin above the heuristic.
+				gameBoard.unmakeMove(move, color);
+				bestScore = Math.max(bestScore, futilityScore);
+				continue;
+			}
+			if (i == 0) {
+				score = -principalVariation(depth - 1, ply + 1, !alphaPlayer, -beta, -alpha);
+			} else {
+				int reduction = reduce && i >= LMR_FULL_MOVES && !forcing ? LMR_REDUCTION[depth][i] : 0;
+				score = -principalVariation(depth - 1 - reduction, ply + 1, !alphaPlayer, -alpha - 1, -alpha);
+				if (reduction > 0 && score > alpha && !stopped) {
+					//beat alpha at the reduced depth, so check it at the full depth.
+					score = -principalVariation(depth - 1, ply + 1, !alphaPlayer, -alpha - 1, -alpha);
+				}
+				if (score > alpha && score < beta) {
+					score = -principalVariation(depth - 1, ply + 1, !alphaPlayer, -beta, -alpha);
+				}
+			}
 			nodesExpanded++;
-			heuristicValue = gameBoard.getHeuristicValue(alphaPlayer);
-			return new int[] {heuristicValue, bestRow, bestCol};
-		} else {
-	         for (int[] move : nextMoves) {
-	        	 row = move[0];
-	        	 col = move[1];
-	        	 block = move[2];
-	        	 dir = move[3];
-	             if (alphaPlayer) {  // max player (alpha)
-//	            	 System.out.print("Human(MAX) Move: "+"("+row+","+col+")"+block+"/"+dir+" " + humCount++ + "/" + nextMoves.size() + " | ");
-	            	 gameBoard.addToBoard(row, col, gameBoard.player1color);
-	            	 gameBoard.rotateBoard(block, dir);
-				     heuristicValue = alphaBetaPrun(depth - 1, gameBoard, false, alpha, beta)[0];
-				     nodesExpanded++;
-//				     System.out.println("Depth: "+ depth+ " Heuristic Value: " + heuristicValue + " ");
-				     if (heuristicValue > alpha) {
-				    	 alpha = heuristicValue;
-				    	 bestRow = row;
-				    	 bestCol = col;
-	            		 bestBlock = block;
-	            		 bestDir = dir;
-				     }
-	            	 //undo move
-				     if (dir == 0) {
-		            	 gameBoard.rotateBoard(block, 1);
-		            	 gameBoard.addToBoard(row, col, '\u0000');
-		             } else {
-		            	 gameBoard.rotateBoard(block, 0);
-		            	 gameBoard.addToBoard(row, col, '\u0000');
-		             }
-				     gameBoard.clearHeuristic();
-	             } else {  // min player (beta)
-//	            	 System.out.println("Computer(MIN) Move: "+"("+row+","+col+")"+block+"/"+dir+" " + humCount++ + "/" + nextMoves.size() + " | ");
-	            	 gameBoard.addToBoard(row, col, gameBoard.player2color);
-	            	 gameBoard.rotateBoard(block, dir);
-	            	 heuristicValue = alphaBetaPrun(depth - 1, gameBoard, true, alpha, beta)[0];
-	            	 nodesExpanded++;
-//				     System.out.println("Depth: "+ depth+ " Heuristic Value: " + heuristicValue + " ");
-	            	 if (heuristicValue < beta) {
-	            		 beta = heuristicValue;
-	            		 bestRow = row;
-	            		 bestCol = col;
-	            		 bestBlock = block;
-	            		 bestDir = dir;
-	            	 }
-	            	 //undo move
-	            	 if (dir == 0) {
-		            	 gameBoard.rotateBoard(block, 1);
-		            	 gameBoard.addToBoard(row, col, '\u0000');
-		             } else {
-		            	 gameBoard.rotateBoard(block, 0);
-		            	 gameBoard.addToBoard(row, col, '\u0000');
-		             }
-	            	 gameBoard.clearHeuristic();
-				 }
-	             //prune off branch
-	             if (alpha >= beta) {
-	            	 break;
-	             }
-	          }
-	         if (alphaPlayer) {
-	        	 return new int[]{alpha, bestRow, bestCol, bestBlock, bestDir};
-	         } else {
-	        	 return new int[]{beta, bestRow, bestCol, bestBlock, bestDir};
-	         }
-	       }
+			gameBoard.unmakeMove(move, color);
+			if (stopped) {
+				return 0;
+			}
+			if (score > bestScore) {
+				bestScore = score;
+				bestMove = move;
+				if (score > alpha) {
+					alpha = score;
+					int[] pv = pvTable[ply];
+					pv[ply] = move;
+					System.arraycopy(pvTable[ply + 1], ply + 1, pv, ply + 1, pvLength[ply + 1] - ply - 1);
+					pvLength[ply] = Math.max(pvLength[ply + 1], ply + 1);
+				}
+			}
+			if (alpha >= beta) {
+				if (orderer != null) {
+					orderer.recordCutoff(move, ply, color, depth);
+				}
+				break;
+			}
+		}
+		if (ply == 0) {
+			bestRootMove = bestMove;
+		}
+		int bound = TranspositionTable.EXACT;
+		if (bestScore <= alphaOrig) {
+			bound = TranspositionTable.UPPER_BOUND;
+		} else if (bestScore >= beta) {
+			bound = TranspositionTable.LOWER_BOUND;
+		}
+		if (table != null) {
+			table.store(key, depth, relativeBound(bound, alphaPlayer), alphaPlayer ? bestScore : -bestScore,
+					Symmetry.transformMove(bestMove, transform));
+		}
+		if (canonical >= 0) {
+			cacheBatch.store(cacheKey(canonical, alphaPlayer), depth, relativeBound(bound, alphaPlayer),
+					alphaPlayer ? bestScore : -bestScore, Symmetry.transformMove(bestMove, Symmetry.getTransform(canonical)));
+		}
+		return bestScore;
+	}
+	
+	/**
+	 * Whether the move just made by a color ends the game or threatens
+	 * a five with the next move. Such moves are never pruned or reduced.
+	 */
+	private boolean isForcing(int color) {
+		return gameBoard.getResult() != GameBoard.IN_PROGRESS
+				|| Threats.hasWin(gameBoard.getBits(color), gameBoard.getBits(1 - color));
+	}
+	
+	/**
+	 * The quiescence search, run where the depth runs out so that a
+	 * five one move away is not missed. Only forced moves are searched:
+	 * if the player to move can make a five the position is won, and if
+	 * the other player threatens one, only the moves that stop every
+	 * such five are searched. Otherwise the position is quiet and
+	 * scored by the heuristic. Scores are from the max (alpha) player's
+	 * point of view as in alphaBetaPrun.
+	 * 
+	 * @param qply how many moves past the depth this position is.
+	 * @param ply how many moves deep this position is from the root.
+	 * @return the score of the position.
+	 */
+	private int quiescence(int qply, int ply, boolean alphaPlayer, int alpha, int beta) {
+		nodesExpanded++;
+		int result = gameBoard.getResult();
+		if (result != GameBoard.IN_PROGRESS) {
+			return terminalScore(gameBoard, result, -qply);
+		}
+		int color = alphaPlayer ? player1 : player2;
+		int other = alphaPlayer ? player2 : player1;
+		long mine = gameBoard.getBits(color);
+		long theirs = gameBoard.getBits(other);
+		if (Threats.hasWin(mine, theirs)) {
+			//wins with the next move.
+			return alphaPlayer ? WIN_SCORE - qply - 1 : -(WIN_SCORE - qply - 1);
+		}
+		if (qply >= quiescencePly || ply + 1 >= MAX_PLY || !Threats.hasWin(theirs, mine)) {
+			return gameBoard.getHeuristicValue(alphaPlayer);
+		}
+		int[] moves = moveBuffers[ply];
+		int numMoves = gameBoard.generateMoves(moves, color);
+		numMoves = Threats.removeLosingMoves(gameBoard, moves, numMoves, color);
+		if (numMoves == 0) {
+			//every move loses to the move after it.
+			return alphaPlayer ? -(WIN_SCORE - qply - 2) : WIN_SCORE - qply - 2;
+		}
+		for (int i = 0; i < numMoves; i++) {
+			int move = moves[i];
+			gameBoard.makeMove(move, color);
+			int score = quiescence(qply + 1, ply + 1, !alphaPlayer, alpha, beta);
+			gameBoard.unmakeMove(move, color);
+			if (alphaPlayer) {
+				alpha = Math.max(alpha, score);
+			} else {
+				beta = Math.min(beta, score);
+			}
+			if (alpha >= beta) {
+				break;
+			}
+		}
+		return alphaPlayer ? alpha : beta;
+	}
+	
+	/**
+	 * Turns a bound from the alpha player's point of view into one from
+	 * the player to move's point of view, or back. A lower bound for
+	 * one player is an upper bound for the other.
+	 */
+	private static int relativeBound(int bound, boolean alphaPlayer) {
+		if (alphaPlayer || bound == TranspositionTable.EXACT) {
+			return bound;
+		}
+		return bound == TranspositionTable.LOWER_BOUND ? TranspositionTable.UPPER_BOUND : TranspositionTable.LOWER_BOUND;
+	}
+	
+	/**
+	 * Writes the stores of the search that are still waiting to the
+	 * analysis cache.
+	 */
+	private void commitCache() {
+		if (cacheBatch != null) {
+			cacheBatch.commit();
+		}
+	}
+	
+	/**
+	 * The key of the current position in the analysis cache.
+	 */
+	private long cacheKey(long canonical, boolean alphaPlayer) {
+		return AnalysisCache.key(canonical, alphaPlayer ? player1 : player2, player1);
 	}
 	
 	/**
 	 * The min-max algorithm that the AI will follow to find the
 	 * best possible move against the human. The strength of the
 	 * AI move will depend on the depth.
-	 * 
+	 *
 	 * @param depth number of moves that the computer can foresee.
 	 * @param gameBoard future states of the gameboard.
 	 * @param alphaPlayer whether the AI is alpha or beta player.
-	 * @return returns the coordinates of intelligent move.
-	 */
-	public int[] minMax(int depth, GameBoard gameBoard, boolean alphaPlayer) {
-		int heuristicValue = 0;
-		int bestValue = 0;
-		int bestRow = -1;
-		int bestCol = -1;
-		int bestBlock = -1;
-		int bestDir = -1;
-		int row, col, block, dir;
-		int compCount = 1;
-		int humCount = 1;
-		List<int[]> nextMoves = gameBoard.getChildren(alphaPlayer);
-		
-		if(depth == 0 || nextMoves.isEmpty()) {
+	 * @return returns the score and the intelligent move.
+	 */
+	public SearchResult minMax(int depth, GameBoard gameBoard, boolean alphaPlayer) {
+		startSearch(gameBoard);
+		SearchResult forced = preSearch(alphaPlayer, depth);
+		if (forced != null) {
+			return forced;
+		}
+		int score = minMax(depth, 0, alphaPlayer);
+		return finishSearch(new SearchResult(), score, depth);
+	}
+
+	/**
+	 * The recursive part of minMax.
+	 *
+	 * @param ply how many moves deep this position is from the root.
+	 * @return the score of the position.
+	 */
+	private int minMax(int depth, int ply, boolean alphaPlayer) {
+		int heuristicValue;
+		int bestMove = Move.NONE;
+		int result = gameBoard.getResult();
+		if (result != GameBoard.IN_PROGRESS) {
+			nodesExpanded++;
+			return terminalScore(gameBoard, result, depth);
+		}
+		if (depth == 0 || ply == MAX_PLY) {
+			nodesExpanded++;
+			return gameBoard.getHeuristicValue(alphaPlayer);
+		}
+		int bestValue = alphaPlayer ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+		int[] moves = moveBuffers[ply];
+		int color = alphaPlayer ? player1 : player2;
+		int numMoves = gameBoard.generateMoves(moves, color);
+		if (ply == 0 && rootSymmetryPruning) {
+			numMoves = Symmetry.removeSymmetricMoves(gameBoard, moves, numMoves, color, seenKeys);
+		}
+		if (ply == 0 && restrictRoot) {
+			numMoves = keepSafeRootMoves(moves, numMoves);
+		}
+
+		for (int i = 0; i < numMoves; i++) {
+			int move = moves[i];
+			gameBoard.makeMove(move, color);
+			heuristicValue = minMax(depth - 1, ply + 1, !alphaPlayer);
 			nodesExpanded++;
-			bestValue = gameBoard.getHeuristicValue(alphaPlayer);
-			return new int[] {bestValue, bestRow, bestCol};
-		} else {
-	         for (int[] move : nextMoves) {
-	        	 row = move[0];
-	        	 col = move[1];
-	        	 block = move[2];
-	        	 dir = move[3];
-	             if (alphaPlayer) {  // max player 
-	            	 bestValue = Integer.MIN_VALUE;
-//	            	 System.out.print("Human(MAX) Move: "+"("+row+","+col+")"+block+"/"+dir+" " + humCount++ + "/" + nextMoves.size() + " | ");
-	            	 gameBoard.addToBoard(row, col, gameBoard.player1color);
-	            	 gameBoard.rotateBoard(block, dir);
-				     heuristicValue = minMax(depth - 1, gameBoard, false)[0];
-	            	 nodesExpanded++;
-//				     System.out.println("Depth: "+ depth+ " Heuristic Value: " + heuristicValue + " ");
-				     if (heuristicValue > bestValue) {
-				    	 bestValue = heuristicValue;
-				    	 bestRow = row;
-				    	 bestCol = col;
-	            		 bestBlock = block;
-	            		 bestDir = dir;
-				     }
-	            	 //undo move
-				     if (dir == 0) {
-		            	 gameBoard.rotateBoard(block, 1);
-		            	 gameBoard.addToBoard(row, col, '\u0000');
-		             } else {
-		            	 gameBoard.rotateBoard(block, 0);
-		            	 gameBoard.addToBoard(row, col, '\u0000');
-		             }
-				     gameBoard.clearHeuristic();
-	             } else {  // min player
-	            	 bestValue = Integer.MAX_VALUE;
-//	            	 System.out.println("Computer(MIN) Move: "+"("+row+","+col+")"+block+"/"+dir+" " + humCount++ + "/" + nextMoves.size() + " | ");
-	            	 gameBoard.addToBoard(row, col, gameBoard.player2color);
-	            	 gameBoard.rotateBoard(block, dir);
-	            	 heuristicValue = minMax(depth - 1, gameBoard, true)[0];
-	            	 nodesExpanded++;
-//				     System.out.println("Depth: "+ depth+ " Heuristic Value: " + heuristicValue + " ");
-	            	 if (heuristicValue < bestValue) {
-	            		 bestValue = heuristicValue;
-	            		 bestRow = row;
-	            		 bestCol = col;
-	            		 bestBlock = block;
-	            		 bestDir = dir;
-	            	 }
-	            	 //undo move
-	            	 if (dir == 0) {
-		            	 gameBoard.rotateBoard(block, 1);
-		            	 gameBoard.addToBoard(row, col, '\u0000');
-		             } else {
-		            	 gameBoard.rotateBoard(block, 0);
-		            	 gameBoard.addToBoard(row, col, '\u0000');
-		             }
-	            	 gameBoard.clearHeuristic();
-				 }
-	          }
-	         if (alphaPlayer) {
-	        	 return new int[]{bestValue, bestRow, bestCol, bestBlock, bestDir};
-	         } else {
-	        	 return new int[]{bestValue, bestRow, bestCol, bestBlock, bestDir};
-	         }
+			gameBoard.unmakeMove(move, color);
+			if (alphaPlayer) {  // max player
+				if (heuristicValue > bestValue) {
+					bestValue = heuristicValue;
+					bestMove = move;
+				}
+			} else {  // min player
+				if (heuristicValue < bestValue) {
+					bestValue = heuristicValue;
+					bestMove = move;
+				}
+			}
+		}
+		if (ply == 0) {
+			bestRootMove = bestMove;
+		}
+		return bestValue;
+	}
+
+	/**
+	 * Scores a finished game from the max (alpha) player's point of
+	 * view. A win found with more depth left is a quicker win, so it
+	 * scores higher than a win further down the tree.
+	 *
+	 * @param gameBoard the finished gameboard.
+	 * @param result the result from GameBoard.getResult().
+	 * @param depth the remaining search depth.
+	 * @return the score of the finished game.
+	 */
+	public static int terminalScore(GameBoard gameBoard, int result, int depth) {
+		if (result == GameBoard.DRAW) {
+			return 0;
+		}
+		int winner = (result == GameBoard.BLACK_WINS) ? GameBoard.BLACK : GameBoard.WHITE;
+		if (winner == GameBoard.colorIndex(gameBoard.player1color)) {
+			return WIN_SCORE + depth;
 		}
+		return -(WIN_SCORE + depth);
 	}
 }
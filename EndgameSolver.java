@@ -0,0 +1,316 @@
+import java.util.Arrays;
+
+/**
+ * This class solves positions near the end of the game exactly: whether
+ * the player to move wins, draws or loses if both players play
+ * perfectly. Unlike the heuristic search it always goes on to the end
+ * of the game, so it is only used when few cells are left empty.
+ *
+ * It works on the two bitboards, without a GameBoard. Scores are only
+ * win, draw and loss, so the window is tiny and most of the tree is cut
+ * off. Winning moves come first: a move that wins at once is found
+ * before any move is made (see Threats.hasWin), the moves that line up
+ * four are searched before the quiet ones, and the moves after which
+ * the other player can win at once are searched last.
+ *
+ * Solved positions are kept in a hash table of its own. Each entry
+ * holds the exact key of the position (see Symmetry.key), so there are
+ * no false hits, and the value of a position never changes, so the
+ * table is kept from one move to the next.
+ */
+public class EndgameSolver {
+	//values from the point of view of the player to move.
+	public static final int WIN = 1;
+	public static final int DRAW = 0;
+	public static final int LOSS = -1;
+	public static final int DEFAULT_TABLE_BITS = 22;	//4M entries, 32 MB.
+
+	//bounds of a table entry.
+	private static final int EXACT = 1;
+	private static final int LOWER_BOUND = 2;
+	private static final int UPPER_BOUND = 3;
+
+	//cell -> its bit after each rotation (quadrant * 2 + direction).
+	static final long[][] ROTATED_CELL = new long[8][GameBoard.CELLS];
+
+	static {
+		for (int rotation = 0; rotation < 8; rotation++) {
+			for (int cell = 0; cell < GameBoard.CELLS; cell++) {
+				ROTATED_CELL[rotation][cell] = GameBoard.rotateBits(1L << cell, rotation >> 1, rotation & 1);
+			}
+		}
+	}
+
+	//entry: key << 6 | bound << 2 | value + 1. Keys fit in 58 bits and
+	//bounds are never 0, so an empty slot is 0.
+	private final long[] table;
+	private final int mask;
+	//the moves of each ply that have to be searched, and the bitboards after them.
+	private final long[][] childMine = new long[GameBoard.CELLS + 1][GameBoard.MAX_MOVES];
+	private final long[][] childTheirs = new long[GameBoard.CELLS + 1][GameBoard.MAX_MOVES];
+	private final int[][] childMoves = new int[GameBoard.CELLS + 1][GameBoard.MAX_MOVES];
+	//best value and move among the moves that did not have to be searched.
+	private int knownValue;
+	private int knownMove;
+	private long nodes;
+	private long nodeLimit;				//nodes to give up at, 0 for none.
+	private boolean aborted;
+
+	public EndgameSolver() {
+		this(DEFAULT_TABLE_BITS);
+	}
+
+	/**
+	 * @param tableBits log2 of the number of table entries.
+	 */
+	public EndgameSolver(int tableBits) {
+		table = new long[1 << tableBits];
+		mask = table.length - 1;
+	}
+
+	/**
+	 * Sets the most nodes a solve may take. A solve that needs more
+	 * gives up, so the time it takes is bounded.
+	 *
+	 * @param nodeLimit the node limit, 0 for none.
+	 */
+	public void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * @return the nodes the last solve searched.
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Empties the table.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+	}
+
+	/**
+	 * Solves the position and finds a move that gets its value.
+	 *
+	 * @param gameBoard the gameboard, which is not changed. The game must
+	 * not be over.
+	 * @param alphaPlayer whether the player to move is the alpha player.
+	 * @return the move, the score from the max (alpha) player's point of
+	 * view (WIN_SCORE, 0 or -WIN_SCORE), the number of empty cells as
+	 * the depth and the nodes, or null if the node limit was reached.
+	 */
+	public SearchResult solve(GameBoard gameBoard, boolean alphaPlayer) {
+		nodes = 1;
+		aborted = false;
+		int color = GameBoard.colorIndex(alphaPlayer ? gameBoard.player1color : gameBoard.player2color);
+		long mine = gameBoard.getBits(color);
+		long theirs = gameBoard.getBits(1 - color);
+		int bestValue;
+		int bestMove;
+		if (Threats.hasWin(mine, theirs)) {
+			bestValue = WIN;
+			bestMove = Threats.findWin(gameBoard, color, new int[GameBoard.MAX_MOVES]);
+		} else {
+			int count = generate(mine, theirs, 0);
+			bestValue = knownValue;
+			bestMove = knownMove;
+			for (int i = 0; i < count && bestValue < WIN; i++) {
+				int value = -search(childTheirs[0][i], childMine[0][i], 1, -WIN, -bestValue);
+				if (aborted) {
+					return null;
+				}
+				if (value > bestValue || bestMove == Move.NONE) {
+					bestValue = value;
+					bestMove = childMoves[0][i];
+				}
+			}
+		}
+		SearchResult result = new SearchResult();
+		int score = bestValue * Computer.WIN_SCORE;
+		result.setScore(alphaPlayer ? score : -score);
+		result.setBestMove(bestMove);
+		result.setDepth(Long.bitCount(gameBoard.getEmptyBits()));
+		result.setNodes(nodes);
+		return result;
+	}
+
+	/**
+	 * Solves a position that is not over. Every node checks for a
+	 * winning move first, so generate only sees positions without one.
+	 *
+	 * @param mine the bitboard of the player to move.
+	 * @param theirs the bitboard of the other player.
+	 * @param ply how many moves deep this position is from the root.
+	 * @return the value, or a bound on it when it is outside the window.
+	 */
+	private int search(long mine, long theirs, int ply, int alpha, int beta) {
+		nodes++;
+		if (Threats.hasWin(mine, theirs)) {
+			return WIN;
+		}
+		if (aborted || (nodeLimit > 0 && nodes >= nodeLimit)) {
+			aborted = true;
+			return DRAW;
+		}
+		int alphaOrig = alpha;
+		long key = Symmetry.key(mine, theirs);
+		int index = (int) Symmetry.hashKey(key) & mask;
+		long entry = table[index];
+		if (entry >>> 6 == key && entry != 0) {
+			int value = (int) (entry & 3) - 1;
+			int bound = (int) (entry >>> 2) & 3;
+			if (bound == EXACT) {
+				return value;
+			} else if (bound == LOWER_BOUND) {
+				alpha = Math.max(alpha, value);
+			} else {
+				beta = Math.min(beta, value);
+			}
+			if (alpha >= beta) {
+				return value;
+			}
+		}
+
+		int count = generate(mine, theirs, ply);
+		int best = knownValue;
+		for (int i = 0; i < count && best < beta; i++) {
+			alpha = Math.max(alpha, best);
+			int value = -search(childTheirs[ply][i], childMine[ply][i], ply + 1, -beta, -alpha);
+			if (aborted) {
+				return DRAW;
+			}
+			best = Math.max(best, value);
+		}
+		int bound = EXACT;
+		if (best <= alphaOrig) {
+			bound = UPPER_BOUND;
+		} else if (best >= beta) {
+			bound = LOWER_BOUND;
+		}
+		table[index] = key << 6 | bound << 2 | (best + 1);
+		return best;
+	}
+
+	/**
+	 * Plays every move of the player to move on the bitboards and
+	 * stores the ones that have to be searched for the ply. Moves whose
+	 * value is known at once, because the game ends, only update
+	 * knownValue and knownMove.
+	 *
+	 * The other player's pieces only depend on the rotation, so as in
+	 * Threats.removeLosingMoves whether they could win next is checked
+	 * once per rotation. The moves with a rotation after which they can
+	 * not are stored first, the ones that line up four first of all.
+	 * The moves with the other rotations mostly lose, so they are stored
+	 * last and left to the search, which finds the win of the other
+	 * player before anything else.
+	 *
+	 * @return the number of moves stored.
+	 */
+	private int generate(long mine, long theirs, int ply) {
+		long[] mines = childMine[ply];
+		long[] theirsAfter = childTheirs[ply];
+		int[] moves = childMoves[ply];
+		knownValue = LOSS - 1;
+		knownMove = Move.NONE;
+		long empty = GameBoard.FULL_BOARD & ~(mine | theirs);
+		int count = 0;
+		int threats = 0;
+		int unsafe = 0;			//one bit per rotation after which the other player can win.
+		for (int rotation = 0; rotation < 8; rotation++) {
+			int quadrant = rotation >> 1;
+			int dir = rotation & 1;
+			long rotatedMine = GameBoard.rotateBits(mine, quadrant, dir);
+			long newTheirs = GameBoard.rotateBits(theirs, quadrant, dir);
+			if (GameBoard.hasFive(newTheirs)) {
+				//the player has no winning move, so only a draw is left.
+				for (long cells = empty; cells != 0; cells &= cells - 1) {
+					int cell = Long.numberOfTrailingZeros(cells);
+					int value = GameBoard.hasFive(rotatedMine | ROTATED_CELL[rotation][cell]) ? DRAW : LOSS;
+					if (value > knownValue) {
+						knownValue = value;
+						knownMove = Move.encode(cell, quadrant, dir);
+					}
+				}
+				continue;
+			}
+			if (Threats.hasWin(newTheirs, rotatedMine)) {
+				unsafe |= 1 << rotation;
+				continue;
+			}
+			long fours = fourCells(rotatedMine, newTheirs);
+			for (long cells = empty; cells != 0; cells &= cells - 1) {
+				int cell = Long.numberOfTrailingZeros(cells);
+				long piece = ROTATED_CELL[rotation][cell];
+				long newMine = rotatedMine | piece;
+				int move = Move.encode(cell, quadrant, dir);
+				if ((newMine | newTheirs) == GameBoard.FULL_BOARD) {
+					if (DRAW > knownValue) {
+						knownValue = DRAW;
+						knownMove = move;
+					}
+					continue;
+				}
+				int slot = count++;
+				if ((piece & fours) != 0) {
+					//fours go first: move the first quiet move to the end.
+					mines[slot] = mines[threats];
+					theirsAfter[slot] = theirsAfter[threats];
+					moves[slot] = moves[threats];
+					slot = threats++;
+				}
+				mines[slot] = newMine;
+				theirsAfter[slot] = newTheirs;
+				moves[slot] = move;
+			}
+		}
+		for (int rotation = 0; rotation < 8; rotation++) {
+			if ((unsafe & (1 << rotation)) == 0) {
+				continue;
+			}
+			int quadrant = rotation >> 1;
+			int dir = rotation & 1;
+			long rotatedMine = GameBoard.rotateBits(mine, quadrant, dir);
+			long newTheirs = GameBoard.rotateBits(theirs, quadrant, dir);
+			for (long cells = empty; cells != 0; cells &= cells - 1) {
+				int cell = Long.numberOfTrailingZeros(cells);
+				long newMine = rotatedMine | ROTATED_CELL[rotation][cell];
+				int move = Move.encode(cell, quadrant, dir);
+				if ((newMine | newTheirs) == GameBoard.FULL_BOARD) {
+					if (DRAW > knownValue) {
+						knownValue = DRAW;
+						knownMove = move;
+					}
+					continue;
+				}
+				mines[count] = newMine;
+				theirsAfter[count] = newTheirs;
+				moves[count++] = move;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the cells where a piece of the player makes four in a line
+	 * with the fifth cell still empty, without rotating. It is only
+	 * used to order moves.
+	 *
+	 * @param mine the bitboard of the player.
+	 * @param theirs the bitboard of the other player.
+	 * @return the cells as a bitboard.
+	 */
+	private static long fourCells(long mine, long theirs) {
+		long cells = 0;
+		for (long line : GameBoard.WIN_LINES) {
+			long missing = line & ~mine;
+			if ((missing & theirs) == 0 && Long.bitCount(missing) == 2) {
+				cells |= missing;
+			}
+		}
+		return cells;
+	}
+}
@@ -0,0 +1,324 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+/**
+ * This class drives the engine over a line protocol on standard input
+ * and output, in the manner of UCI, so one warmed up engine process can
+ * serve many positions. Each command is one line:
+ *
+ *   pentago                            answers "id name Pentago" and "pentagook"
+ *   isready                            answers "readyok"
+ *   newgame                            starts a new game and clears the tables
+ *   position startpos [moves m1 m2 ...]
+ *   position board <cells> <b|w> [moves m1 m2 ...]
+ *   go [depth n] [movetime ms] [nodes n] [infinite]
+ *                                      without limits, the budget of a game move
+ *   stop                               stops the search, which answers with its move
+ *   quit
+ *
+ * Moves are written b/p-bd like the moves the human types, with a dash
+ * instead of the space (see Move.toToken). The cells of "position
+ * board" are the 36 cells row by row, each B, W or "." for empty,
+ * followed by the color to move. Black moves first from startpos.
+ *
+ * The search runs on its own thread, so stop is read while it
+ * searches. After each completed iteration it writes
+ *
+ *   info depth d score s nodes n time ms nps n pv m1 m2 ...
+ *
+ * with the score from the point of view of the player to move, and at
+ * the end "bestmove m", with "ponder m" when it expects a reply.
+ * Errors are written as "info string" lines.
+ */
+public class EngineProtocol {
+	public static final String NAME = "Pentago";
+	//budget of a go without limits, the same as a move of the game.
+	public static final int DEFAULT_DEPTH = Pentago.DEPTH;
+	public static final long DEFAULT_TIME_MS = Pentago.TIME_PER_MOVE_MS;
+
+	private final EngineSession session;
+	private final AnalysisCache cache;	//flushed after each search, null if not used.
+	private final PrintStream out;
+	private Thread searchThread;		//the running search, null if there is none.
+	private boolean infinite;			//whether the running search only ends with stop.
+	private boolean alphaToMove;		//whether player 1 (alpha) is to move in the searched position.
+
+	/**
+	 * @param session the engine session, kept for the whole run.
+	 * @param cache the analysis cache of the session's computer, or null.
+	 * @param out where the answers are written.
+	 */
+	public EngineProtocol(EngineSession session, AnalysisCache cache, PrintStream out) {
+		this.session = session;
+		this.cache = cache;
+		this.out = out;
+		session.getComputer().setIterationListener(this::sendInfo);
+	}
+
+	/**
+	 * Starts the engine with the tables and the options of Pentago and
+	 * reads commands from standard input until quit.
+	 *
+	 * @param args command line arguments.
+	 * @throws IOException if standard input can not be read.
+	 */
+	public static void main(String[] args) throws IOException {
+		Pentago.openTables();
+		EngineProtocol protocol = new EngineProtocol(new EngineSession(Pentago.newComputer()),
+				Pentago.myCache, System.out);
+		protocol.run(new BufferedReader(new InputStreamReader(System.in)));
+	}
+
+	/**
+	 * Reads and runs commands until quit. At the end of the input a
+	 * running search with a budget is allowed to finish, and a go
+	 * infinite is stopped.
+	 *
+	 * @param in the commands.
+	 * @throws IOException if the commands can not be read.
+	 */
+	public void run(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (!command(line.trim())) {
+				stopSearch();
+				return;
+			}
+		}
+		if (infinite) {
+			stopSearch();
+		} else {
+			waitForSearch();
+		}
+	}
+
+	/**
+	 * Runs one command.
+	 *
+	 * @return false if it was quit.
+	 */
+	public boolean command(String line) {
+		String[] words = line.split("\\s+");
+		switch (words[0]) {
+			case "":
+				break;
+			case "pentago":
+				send("id name " + NAME);
+				send("pentagook");
+				break;
+			case "isready":
+				send("readyok");
+				break;
+			case "newgame":
+				stopSearch();
+				session.newGame('B', 'W', 'B');
+				break;
+			case "position":
+				stopSearch();
+				position(words);
+				break;
+			case "go":
+				stopSearch();
+				go(words);
+				break;
+			case "stop":
+				stopSearch();
+				break;
+			case "quit":
+				return false;
+			default:
+				send("info string unknown command " + words[0]);
+		}
+		return true;
+	}
+
+	/**
+	 * Sets up the position of a position command and plays its moves.
+	 */
+	private void position(String[] words) {
+		int next;
+		if (words.length >= 2 && words[1].equals("startpos")) {
+			GameBoard board = new GameBoard();
+			session.setPosition(board, GameBoard.BLACK);
+			next = 2;
+		} else if (words.length >= 4 && words[1].equals("board")) {
+			GameBoard board = parseBoard(words[2]);
+			int colorToMove = GameBoard.colorIndex(words[3].length() == 1 ? words[3].charAt(0) : ' ');
+			if (board == null || colorToMove < 0) {
+				send("info string bad board " + words[2] + " " + words[3]);
+				return;
+			}
+			int stones = GameBoard.CELLS - Long.bitCount(board.getEmptyBits());
+			if (Long.bitCount(board.getBits(colorToMove)) != stones / 2) {
+				send("info string " + words[3] + " can not be to move");
+				return;
+			}
+			session.setPosition(board, colorToMove);
+			next = 4;
+		} else {
+			send("info string position needs startpos or board");
+			return;
+		}
+		if (next < words.length && !words[next].equals("moves")) {
+			send("info string unknown word " + words[next]);
+			return;
+		}
+		for (int i = next + 1; i < words.length; i++) {
+			int move = Move.parse(words[i]);
+			try {
+				session.applyMove(move);
+			} catch (IllegalArgumentException e) {
+				send("info string " + words[i] + ": " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads the 36 cells of a board, row by row.
+	 *
+	 * @return the gameboard, null if the cells are not a board.
+	 */
+	private static GameBoard parseBoard(String cells) {
+		if (cells.length() != GameBoard.CELLS) {
+			return null;
+		}
+		char[][] state = new char[GameBoard.SIZE][GameBoard.SIZE];
+		for (int cell = 0; cell < GameBoard.CELLS; cell++) {
+			char c = Character.toUpperCase(cells.charAt(cell));
+			if (c == 'B' || c == 'W') {
+				state[cell / GameBoard.SIZE][cell % GameBoard.SIZE] = c;
+			} else if (c != '.') {
+				return null;
+			}
+		}
+		return new GameBoard(state);
+	}
+
+	/**
+	 * Starts the search of a go command on its own thread.
+	 */
+	private void go(String[] words) {
+		if (words.length == 1) {
+			start(new SearchLimits(DEFAULT_DEPTH, DEFAULT_TIME_MS, 0));
+			return;
+		}
+		SearchLimits limits = new SearchLimits(Computer.MAX_PLY);
+		try {
+			for (int i = 1; i < words.length; i++) {
+				switch (words[i]) {
+					case "depth":
+						limits.setDepth(Integer.parseInt(words[++i]));
+						break;
+					case "movetime":
+						limits.setTimeMillis(Long.parseLong(words[++i]));
+						break;
+					case "nodes":
+						limits.setNodes(Long.parseLong(words[++i]));
+						break;
+					case "infinite":
+						break;
+					default:
+						send("info string unknown word " + words[i]);
+						return;
+				}
+			}
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			send("info string go needs a number after " + words[words.length - 1]);
+			return;
+		}
+		start(limits);
+	}
+
+	/**
+	 * Starts a search on its own thread, or answers at once when the
+	 * game is over.
+	 */
+	private void start(SearchLimits limits) {
+		if (session.getBoard().getResult() != GameBoard.IN_PROGRESS) {
+			send("bestmove " + Move.toToken(Move.NONE));
+			return;
+		}
+		alphaToMove = session.isAlphaToMove();
+		infinite = limits.getDepth() >= Computer.MAX_PLY && limits.getTimeMillis() == 0 && limits.getNodes() == 0;
+		//cleared here and not by the search, so a stop right after go is kept.
+		session.clearStop();
+		searchThread = new Thread(() -> search(limits), "search");
+		searchThread.start();
+	}
+
+	/**
+	 * Runs on the search thread: searches and writes the move.
+	 */
+	private void search(SearchLimits limits) {
+		SearchResult result = session.search(limits);
+		if (cache != null) {
+			cache.flush();
+		}
+		sendInfo(result);
+		int[] line = result.getPrincipalVariation();
+		String answer = "bestmove " + Move.toToken(result.getBestMove());
+		if (line != null && line.length > 1) {
+			answer += " ponder " + Move.toToken(line[1]);
+		}
+		send(answer);
+	}
+
+	/**
+	 * Writes an info line about a search result.
+	 */
+	private void sendInfo(SearchResult result) {
+		int score = alphaToMove ? result.getScore() : -result.getScore();
+		StringBuilder info = new StringBuilder("info depth ").append(result.getDepth())
+				.append(" score ").append(score)
+				.append(" nodes ").append(result.getNodes())
+				.append(" time ").append(result.getTimeMillis())
+				.append(" nps ").append(result.getNodesPerSecond());
+		int[] line = result.getPrincipalVariation();
+		if (line != null && line.length > 0) {
+			info.append(" pv");
+			for (int move : line) {
+				info.append(' ').append(Move.toToken(move));
+			}
+		}
+		send(info.toString());
+	}
+
+	/**
+	 * Stops the running search and waits for it to write its move.
+	 */
+	private void stopSearch() {
+		if (searchThread == null) {
+			return;
+		}
+		session.stop();
+		try {
+			searchThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		searchThread = null;
+	}
+
+	/**
+	 * Waits for the running search to finish by itself.
+	 */
+	private void waitForSearch() {
+		if (searchThread == null) {
+			return;
+		}
+		try {
+			searchThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		searchThread = null;
+	}
+
+	private synchronized void send(String line) {
+		out.println(line);
+		out.flush();
+	}
+}
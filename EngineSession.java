@@ -0,0 +1,162 @@
+/**
+ * This class keeps one engine alive for a whole game and from one game
+ * to the next: the gameboard, the computer with its move buffers, the
+ * transposition table and the killer and history tables of the move
+ * orderer. Nothing is thrown away between moves. The table entries of
+ * earlier searches are aged (see TranspositionTable.newSearch) and the
+ * history is halved (see MoveOrderer.age), so every search starts warm
+ * but what it finds itself counts the most.
+ *
+ * Every move adds one stone, so the color to move follows from the
+ * number of stones and the color that moved first. Moves can be
+ * applied through the session or made on its gameboard directly.
+ */
+public class EngineSession {
+	private final Computer computer;
+	private final MoveOrderer orderer;		//kept between searches, null if moves are not ordered.
+	private GameBoard gameBoard;
+	private int firstColor;					//bitboard index of the color that moved first.
+	private long totalNodes;				//nodes searched since the session was made.
+	private int searches;					//searches since the session was made.
+
+	/**
+	 * @param computer the computer that searches, set up with its options
+	 * and its transposition table. It is kept for the whole session.
+	 */
+	public EngineSession(Computer computer) {
+		this.computer = computer;
+		this.orderer = computer.getMoveOrderer();
+		newGame('B', 'W', 'B');
+	}
+
+	public Computer getComputer() {
+		return computer;
+	}
+
+	/**
+	 * @return the gameboard of the current game. A new game has a new
+	 * gameboard.
+	 */
+	public GameBoard getBoard() {
+		return gameBoard;
+	}
+
+	/**
+	 * Starts a new game on an empty board. The transposition table and
+	 * the move orderer are cleared, since little of the last game comes
+	 * up again.
+	 *
+	 * @param player1color the color of player 1 (alpha), 'B' or 'W'.
+	 * @param player2color the color of player 2.
+	 * @param firstColor the color that moves first.
+	 */
+	public void newGame(char player1color, char player2color, char firstColor) {
+		gameBoard = new GameBoard();
+		gameBoard.setPlayer1color(player1color);
+		gameBoard.setPlayer2color(player2color);
+		this.firstColor = GameBoard.colorIndex(firstColor);
+		if (computer.getTable() != null) {
+			computer.getTable().clear();
+		}
+		if (orderer != null) {
+			orderer.clear();
+		}
+	}
+
+	/**
+	 * Sets up a position of the current game, or of any game, without
+	 * clearing the tables, so they stay warm for a position that
+	 * follows the last one.
+	 *
+	 * @param board the pieces, which are copied. Its player colors are
+	 * replaced by the session's.
+	 * @param colorToMove the bitboard index of the color to move.
+	 */
+	public void setPosition(GameBoard board, int colorToMove) {
+		GameBoard copy = new GameBoard(board);
+		copy.setPlayer1color(gameBoard.player1color);
+		copy.setPlayer2color(gameBoard.player2color);
+		gameBoard = copy;
+		int stones = GameBoard.CELLS - Long.bitCount(gameBoard.getEmptyBits());
+		firstColor = stones % 2 == 0 ? colorToMove : 1 - colorToMove;
+	}
+	
+	/**
+	 * @return the bitboard index of the color to move.
+	 */
+	public int getColorToMove() {
+		int stones = GameBoard.CELLS - Long.bitCount(gameBoard.getEmptyBits());
+		return stones % 2 == 0 ? firstColor : 1 - firstColor;
+	}
+
+	/**
+	 * @return whether player 1 (alpha) is to move.
+	 */
+	public boolean isAlphaToMove() {
+		return getColorToMove() == GameBoard.colorIndex(gameBoard.player1color);
+	}
+
+	/**
+	 * Plays a move for the color to move.
+	 *
+	 * @param move the packed move.
+	 * @throws IllegalArgumentException if the game is over or the cell
+	 * is taken.
+	 */
+	public void applyMove(int move) {
+		if (gameBoard.getResult() != GameBoard.IN_PROGRESS) {
+			throw new IllegalArgumentException("the game is over");
+		}
+		if (move == Move.NONE || (gameBoard.getEmptyBits() & (1L << Move.getCell(move))) == 0) {
+			throw new IllegalArgumentException("illegal move " + Move.toString(move));
+		}
+		gameBoard.makeMove(move, getColorToMove());
+	}
+
+	/**
+	 * Searches the best move for the color to move with iterative
+	 * deepening. The gameboard is left as it was.
+	 *
+	 * @param limits the budget of the search.
+	 * @return the result of the search.
+	 */
+	public SearchResult search(SearchLimits limits) {
+		if (orderer != null) {
+			orderer.age();
+		}
+		SearchResult result = computer.iterativeDeepening(gameBoard, isAlphaToMove(), limits);
+		totalNodes += result.getNodes();
+		searches++;
+		return result;
+	}
+
+	/**
+	 * Asks a running search to stop. It can be called from another
+	 * thread, and the search returns its last completed iteration. It
+	 * also stops a search that has not started yet, until clearStop.
+	 */
+	public void stop() {
+		computer.stop();
+	}
+
+	/**
+	 * Takes back a stop(). Call it before starting a search on another
+	 * thread, so a stop() that comes in while it starts is kept.
+	 */
+	public void clearStop() {
+		computer.clearStop();
+	}
+
+	public long getTotalNodes() {
+		return totalNodes;
+	}
+
+	public int getSearches() {
+		return searches;
+	}
+
+	@Override
+	public String toString() {
+		return "session: " + searches + " searches, " + totalNodes + " nodes";
+	}
+}
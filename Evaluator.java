@@ -0,0 +1,242 @@
+/**
+ * This class keeps the heuristic score of a gameboard up to date as
+ * pieces are placed, removed and rotated, so a leaf of the search can
+ * be scored without looking at the whole board.
+ *
+ * The score is made of two parts for each color:
+ *   - how many of the 32 winning lines hold none of that color's pieces.
+ *   - points for pieces in a row along the 18 rows, columns and
+ *     diagonals: 10 for 2 in a row, 20 more for 3, 50 more for 4 and
+ *     500 more for 5. A sixth piece in a row adds nothing.
+ * Each part is a sum over lines, so a change to one cell only touches
+ * the lines through that cell. Undoing a move applies the opposite
+ * changes, which brings every count back to exactly where it was.
+ */
+public class Evaluator {
+	private static final int[] IN_A_ROW_POINTS = {0, 0, 10, 20, 50, 500};
+
+	//the 18 rows, columns and diagonals that are long enough for 5 in a row.
+	static final int[][] LINES = new int[18][];
+	//points for the pieces in a row in a 6-bit line pattern.
+	static final int[] LINE_POINTS = new int[64];
+	//for each cell: the winning lines, lines and position in those lines through it.
+	static final int[][] CELL_WIN_LINES = new int[GameBoard.CELLS][];
+	static final int[][] CELL_LINES = new int[GameBoard.CELLS][];
+	static final int[][] CELL_LINE_POSITION = new int[GameBoard.CELLS][];
+
+	static {
+		int line = 0;
+		for (int i = 0; i < 6; i++) {
+			LINES[line++] = lineCells(i, 0, 0, 1, 6);
+			LINES[line++] = lineCells(0, i, 1, 0, 6);
+		}
+		LINES[line++] = lineCells(0, 0, 1, 1, 6);
+		LINES[line++] = lineCells(1, 0, 1, 1, 5);
+		LINES[line++] = lineCells(0, 1, 1, 1, 5);
+		LINES[line++] = lineCells(0, 5, 1, -1, 6);
+		LINES[line++] = lineCells(0, 4, 1, -1, 5);
+		LINES[line++] = lineCells(1, 5, 1, -1, 5);
+
+		for (int pattern = 0; pattern < 64; pattern++) {
+			int points = 0;
+			int count = 0;
+			for (int i = 0; i < 6; i++) {
+				if ((pattern & (1 << i)) != 0) {
+					count++;
+					if (count < IN_A_ROW_POINTS.length) {
+						points += IN_A_ROW_POINTS[count];
+					}
+				} else {
+					count = 0;
+				}
+			}
+			LINE_POINTS[pattern] = points;
+		}
+
+		for (int cell = 0; cell < GameBoard.CELLS; cell++) {
+			long bit = 1L << cell;
+			int numWinLines = 0;
+			for (long winLine : GameBoard.WIN_LINES) {
+				if ((winLine & bit) != 0) {
+					numWinLines++;
+				}
+			}
+			CELL_WIN_LINES[cell] = new int[numWinLines];
+			numWinLines = 0;
+			for (int i = 0; i < GameBoard.WIN_LINES.length; i++) {
+				if ((GameBoard.WIN_LINES[i] & bit) != 0) {
+					CELL_WIN_LINES[cell][numWinLines++] = i;
+				}
+			}
+
+			int numLines = 0;
+			for (int[] cells : LINES) {
+				for (int c : cells) {
+					if (c == cell) {
+						numLines++;
+					}
+				}
+			}
+			CELL_LINES[cell] = new int[numLines];
+			CELL_LINE_POSITION[cell] = new int[numLines];
+			numLines = 0;
+			for (int i = 0; i < LINES.length; i++) {
+				for (int j = 0; j < LINES[i].length; j++) {
+					if (LINES[i][j] == cell) {
+						CELL_LINES[cell][numLines] = i;
+						CELL_LINE_POSITION[cell][numLines++] = j;
+					}
+				}
+			}
+		}
+	}
+
+	private int[][] winLineCount;	//pieces of each color in each winning line.
+	private int[] openWinLines;		//winning lines holding none of each color's pieces.
+	private int[][] linePattern;	//pieces of each color in each line as a 6-bit pattern.
+	private int[] inARowPoints;		//in a row points of each color.
+
+	/**
+	 * Constructor for the evaluator of an empty board.
+	 */
+	public Evaluator() {
+		winLineCount = new int[2][GameBoard.WIN_LINES.length];
+		openWinLines = new int[] {GameBoard.WIN_LINES.length, GameBoard.WIN_LINES.length};
+		linePattern = new int[2][LINES.length];
+		inARowPoints = new int[2];
+	}
+
+	/**
+	 * Copy constructor.
+	 *
+	 * @param theEvaluator the evaluator to copy.
+	 */
+	public Evaluator(Evaluator theEvaluator) {
+		winLineCount = new int[][] {theEvaluator.winLineCount[0].clone(), theEvaluator.winLineCount[1].clone()};
+		openWinLines = theEvaluator.openWinLines.clone();
+		linePattern = new int[][] {theEvaluator.linePattern[0].clone(), theEvaluator.linePattern[1].clone()};
+		inARowPoints = theEvaluator.inARowPoints.clone();
+	}
+
+	/**
+	 * Builds the cell list of a line on the board.
+	 */
+	private static int[] lineCells(int row, int col, int rowStep, int colStep, int length) {
+		int[] cells = new int[length];
+		for (int k = 0; k < length; k++) {
+			cells[k] = (row + k * rowStep) * 6 + col + k * colStep;
+		}
+		return cells;
+	}
+
+	/**
+	 * Updates the counts for a piece placed on an empty cell.
+	 *
+	 * @param cell the cell index (row * 6 + col).
+	 * @param color the bitboard index of the piece's color.
+	 */
+	public void add(int cell, int color) {
+		int[] winLines = CELL_WIN_LINES[cell];
+		for (int i = 0; i < winLines.length; i++) {
+			if (winLineCount[color][winLines[i]]++ == 0) {
+				openWinLines[color]--;
+			}
+		}
+		int[] lines = CELL_LINES[cell];
+		int[] positions = CELL_LINE_POSITION[cell];
+		for (int i = 0; i < lines.length; i++) {
+			int pattern = linePattern[color][lines[i]];
+			int newPattern = pattern | (1 << positions[i]);
+			inARowPoints[color] += LINE_POINTS[newPattern] - LINE_POINTS[pattern];
+			linePattern[color][lines[i]] = newPattern;
+		}
+	}
+
+	/**
+	 * Updates the counts for a piece taken off a cell.
+	 *
+	 * @param cell the cell index (row * 6 + col).
+	 * @param color the bitboard index of the piece's color.
+	 */
+	public void remove(int cell, int color) {
+		int[] winLines = CELL_WIN_LINES[cell];
+		for (int i = 0; i < winLines.length; i++) {
+			if (--winLineCount[color][winLines[i]] == 0) {
+				openWinLines[color]++;
+			}
+		}
+		int[] lines = CELL_LINES[cell];
+		int[] positions = CELL_LINE_POSITION[cell];
+		for (int i = 0; i < lines.length; i++) {
+			int pattern = linePattern[color][lines[i]];
+			int newPattern = pattern & ~(1 << positions[i]);
+			inARowPoints[color] += LINE_POINTS[newPattern] - LINE_POINTS[pattern];
+			linePattern[color][lines[i]] = newPattern;
+		}
+	}
+
+	/**
+	 * Updates the counts for a rotated quadrant. Only the cells whose
+	 * piece changed are touched, which is at most 8 per color.
+	 *
+	 * @param color the bitboard index of the color.
+	 * @param before the color's bitboard before the rotation.
+	 * @param after the color's bitboard after the rotation.
+	 */
+	public void update(int color, long before, long after) {
+		for (long removed = before & ~after; removed != 0; removed &= removed - 1) {
+			remove(Long.numberOfTrailingZeros(removed), color);
+		}
+		for (long added = after & ~before; added != 0; added &= added - 1) {
+			add(Long.numberOfTrailingZeros(added), color);
+		}
+	}
+
+	/**
+	 * Returns how many of the 32 winning lines hold none of a color's pieces.
+	 *
+	 * @param color the bitboard index of the color.
+	 * @return the number of winning lines free of that color.
+	 */
+	public int getOpenWinLines(int color) {
+		return openWinLines[color];
+	}
+
+	/**
+	 * Returns the number of a color's pieces in a winning line.
+	 *
+	 * @param color the bitboard index of the color.
+	 * @param winLine the index of the line in GameBoard.WIN_LINES.
+	 * @return the number of pieces.
+	 */
+	public int getWinLineCount(int color, int winLine) {
+		return winLineCount[color][winLine];
+	}
+
+	/**
+	 * Returns the in a row points of a color.
+	 *
+	 * @param color the bitboard index of the color.
+	 * @return the in a row points.
+	 */
+	public int getInARowPoints(int color) {
+		return inARowPoints[color];
+	}
+
+	/**
+	 * The heuristic score: winning lines still open to the player in
+	 * question plus the in a row points of player 2 minus those of
+	 * player 1 (the other way around for the beta player).
+	 *
+	 * @param isAlphaPlayer whether the player in question is alpha.
+	 * @param player1 the bitboard index of player 1's color.
+	 * @param player2 the bitboard index of player 2's color.
+	 * @return the heuristic score.
+	 */
+	public int getScore(boolean isAlphaPlayer, int player1, int player2) {
+		if (isAlphaPlayer) {
+			return openWinLines[player2] + inARowPoints[player2] - inARowPoints[player1];
+		}
+		return openWinLines[player1] + inARowPoints[player1] - inARowPoints[player2];
+	}
+}
@@ -1,5 +1,6 @@
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * @author Tony
@@ -10,8 +11,114 @@ import java.util.List;
  * up.  
  */
 public class GameBoard {
-	char myState[][];			//the current state of the game board
-	int myHeuristic;			//the heuristic score of current player
+	public static final int SIZE = 6;			//rows and columns of the board.
+	public static final int CELLS = 36;			//number of cells on the board.
+	public static final int BLACK = 0;			//bitboard index of black pieces.
+	public static final int WHITE = 1;			//bitboard index of white pieces.
+	public static final long FULL_BOARD = (1L << CELLS) - 1;
+	public static final int MAX_MOVES = 288;	//36 cells * 4 quadrants * 2 directions.
+	
+	//bit offset of the top left cell of each quadrant (cell = row * 6 + col).
+	static final int[] QUADRANT_OFFSET = {0, 3, 18, 21};
+	//all 9 cells of each quadrant.
+	static final long[] QUADRANT_MASK = new long[4];
+	//9-bit quadrant pattern -> rotated 9-bit pattern. [0]=CounterClockwise [1]=Clockwise
+	static final int[][] ROTATION = new int[2][512];
+	//9-bit patterns that a quarter turn / half turn leaves unchanged.
+	static final boolean[] QUARTER_TURN_SYMMETRIC = new boolean[512];
+	static final boolean[] HALF_TURN_SYMMETRIC = new boolean[512];
+	
+	//results returned by getResult().
+	public static final int IN_PROGRESS = 0;
+	public static final int BLACK_WINS = 1;
+	public static final int WHITE_WINS = 2;
+	public static final int DRAW = 3;
+	
+	//the 32 possible five in a rows: 12 horizontal, 12 vertical and 8 diagonal.
+	public static final long[] WIN_LINES = new long[32];
+	
+	//random key for each color on each cell. The hash is the XOR of the keys of every piece.
+	static final long[][] ZOBRIST = new long[2][CELLS];
+	//XOR of the keys of a 9-bit pattern in a quadrant, so a rotation is two lookups per color.
+	static final long[][][] QUADRANT_ZOBRIST = new long[2][4][512];
+	//XORed into the hash by the search when the alpha player is to move.
+	public static final long ALPHA_TO_MOVE_KEY;
+	//when true every hash update is checked against a hash computed from scratch.
+	//Read once at startup, set with -Dpentago.verifyHash=true.
+	public static final boolean VERIFY_HASH = Boolean.getBoolean("pentago.verifyHash");
+	
+	static {
+		for (int q = 0; q < 4; q++) {
+			QUADRANT_MASK[q] = scatterQuadrant(511, q);
+		}
+		for (int pattern = 0; pattern < 512; pattern++) {
+			int clockwise = 0;
+			for (int r = 0; r < 3; r++) {
+				for (int c = 0; c < 3; c++) {
+					if ((pattern & (1 << (r * 3 + c))) != 0) {
+						//(r, c) moves to (c, 2 - r) when turned clockwise.
+						clockwise |= 1 << (c * 3 + 2 - r);
+					}
+				}
+			}
+			ROTATION[1][pattern] = clockwise;
+			ROTATION[0][clockwise] = pattern;
+		}
+		for (int pattern = 0; pattern < 512; pattern++) {
+			QUARTER_TURN_SYMMETRIC[pattern] = ROTATION[1][pattern] == pattern;
+			HALF_TURN_SYMMETRIC[pattern] = ROTATION[1][ROTATION[1][pattern]] == pattern;
+		}
+		Random rand = new Random(0x50454E5441474FL);	//fixed seed so hashes match across runs
+		for (int color = BLACK; color <= WHITE; color++) {
+			for (int cell = 0; cell < CELLS; cell++) {
+				ZOBRIST[color][cell] = rand.nextLong();
+			}
+			for (int q = 0; q < 4; q++) {
+				for (int pattern = 0; pattern < 512; pattern++) {
+					long key = 0;
+					for (long bits = scatterQuadrant(pattern, q); bits != 0; bits &= bits - 1) {
+						key ^= ZOBRIST[color][Long.numberOfTrailingZeros(bits)];
+					}
+					QUADRANT_ZOBRIST[color][q][pattern] = key;
+				}
+			}
+		}
+		ALPHA_TO_MOVE_KEY = rand.nextLong();
+		int line = 0;
+		for (int i = 0; i < 6; i++) {
+			for (int start = 0; start < 2; start++) {
+				WIN_LINES[line++] = lineMask(i, start, 0, 1);	//horizontal
+				WIN_LINES[line++] = lineMask(start, i, 1, 0);	//vertical
+			}
+		}
+		for (int start = 0; start < 2; start++) {
+			WIN_LINES[line++] = lineMask(start, start, 1, 1);			//main diagonal
+			WIN_LINES[line++] = lineMask(start, 5 - start, 1, -1);		//main anti-diagonal
+			WIN_LINES[line++] = lineMask(start, 1 - start, 1, 1);		//off diagonals
+			WIN_LINES[line++] = lineMask(start, 4 + start, 1, -1);		//off anti-diagonals
+		}
+	}
+	
+	/**
+	 * Builds the mask of five cells in a row.
+	 * 
+	 * @param row row of the first cell.
+	 * @param col column of the first cell.
+	 * @param rowStep row direction of the line.
+	 * @param colStep column direction of the line.
+	 * @return the mask of the five cells.
+	 */
+	private static long lineMask(int row, int col, int rowStep, int colStep) {
+		long mask = 0;
+		for (int k = 0; k < 5; k++) {
+			mask |= 1L << ((row + k * rowStep) * 6 + col + k * colStep);
+		}
+		return mask;
+	}
+	
+	long myBits[];				//the current state of the game board, one 36-bit mask per color
+	Evaluator myEvaluator;		//keeps the heuristic score up to date
+	long myHash;				//zobrist hash of the pieces on the board
 	boolean isGameOver;				
 	private String previousMove;	
 	public char player1color;
@@ -22,7 +129,8 @@ public class GameBoard {
 	 * array that is a 6x6 playing board.
 	 */
 	public GameBoard() {
-		myState = new char[6][6];
+		myBits = new long[2];
+		myEvaluator = new Evaluator();
 	}
 	
 	/**
@@ -31,12 +139,103 @@ public class GameBoard {
 	 * @param moves
 	 */
 	public GameBoard(char[][] moves) {
-		myState = new char[6][6];
-		for (int i = 0; i < 6; i++) {
-			for (int j = 0; j < 6; j++) {
-				myState[i][j] = moves[i][j];
-			}
+		myBits = new long[2];
+		myEvaluator = new Evaluator();
+		setMyState(moves);
+	}
+	
+	/**
+	 * Copy constructor. Copying a bitboard is only two longs, so
+	 * search threads can cheaply work on their own board.
+	 * 
+	 * @param theGameBoard the gameboard to copy.
+	 */
+	public GameBoard(GameBoard theGameBoard) {
+		myBits = new long[] {theGameBoard.myBits[BLACK], theGameBoard.myBits[WHITE]};
+		myEvaluator = new Evaluator(theGameBoard.myEvaluator);
+		myHash = theGameBoard.myHash;
+		isGameOver = theGameBoard.isGameOver;
+		previousMove = theGameBoard.previousMove;
+		player1color = theGameBoard.player1color;
+		player2color = theGameBoard.player2color;
+	}
+	
+	/**
+	 * Maps a piece color to its bitboard index.
+	 * 
+	 * @param color the color of the piece. Either 'B' or 'W'.
+	 * @return the bitboard index of the color, -1 if it is not a color.
+	 */
+	public static int colorIndex(char color) {
+		if (color == 'B' || color == 'b') {
+			return BLACK;
+		} else if (color == 'W' || color == 'w') {
+			return WHITE;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Maps the block numbers used by the user input (1-4) to the
+	 * quadrant index used by the bitboard (0-3). Anything that is not
+	 * block 2, 3 or 4 is the top left quadrant.
+	 * 
+	 * @param blockNum the block number.
+	 * @return the quadrant index.
+	 */
+	public static int blockToQuadrant(int blockNum) {
+		if (blockNum == 2) {
+			return 1;
+		} else if (blockNum == 3) {
+			return 2;
+		} else if (blockNum == 4) {
+			return 3;
 		}
+		return 0;
+	}
+	
+	/**
+	 * Gathers the 9 cells of a quadrant into a 9-bit pattern
+	 * (bit = row * 3 + col inside the quadrant).
+	 * 
+	 * @param bits the bitboard of one color.
+	 * @param quadrant the quadrant index (0-3).
+	 * @return the 9-bit pattern of the quadrant.
+	 */
+	public static int quadrantPattern(long bits, int quadrant) {
+		int offset = QUADRANT_OFFSET[quadrant];
+		return (int) ((bits >>> offset) & 7)
+				| (int) ((bits >>> (offset + 6)) & 7) << 3
+				| (int) ((bits >>> (offset + 12)) & 7) << 6;
+	}
+	
+	/**
+	 * Spreads a 9-bit quadrant pattern back onto the 36-bit board.
+	 * 
+	 * @param pattern the 9-bit pattern of the quadrant.
+	 * @param quadrant the quadrant index (0-3).
+	 * @return the bitboard containing only that quadrant.
+	 */
+	public static long scatterQuadrant(int pattern, int quadrant) {
+		int offset = QUADRANT_OFFSET[quadrant];
+		return ((long) (pattern & 7) << offset)
+				| ((long) ((pattern >>> 3) & 7) << (offset + 6))
+				| ((long) ((pattern >>> 6) & 7) << (offset + 12));
+	}
+	
+	/**
+	 * Rotates one quadrant of a single color bitboard through the
+	 * precomputed rotation tables.
+	 * 
+	 * @param bits the bitboard of one color.
+	 * @param quadrant the quadrant index (0-3).
+	 * @param dir direction of rotation. 0=CounterClockwise 1=Clockwise
+	 * @return the rotated bitboard.
+	 */
+	public static long rotateBits(long bits, int quadrant, int dir) {
+		int pattern = quadrantPattern(bits, quadrant);
+		return (bits & ~QUADRANT_MASK[quadrant])
+				| scatterQuadrant(ROTATION[dir][pattern], quadrant);
 	}
 	
 	
@@ -68,20 +267,103 @@ public class GameBoard {
 		this.player2color = player2color;
 	}
 
+	/**
+	 * Builds a 2D array snapshot of the board. Changes to the
+	 * returned array do not affect the board.
+	 * 
+	 * @return the 6x6 array of pieces.
+	 */
 	public char[][] getMyState() {
-		return myState;
+		char[][] state = new char[6][6];
+		for (int i = 0; i < 6; i++) {
+			for (int j = 0; j < 6; j++) {
+				state[i][j] = cellAt(i, j);
+			}
+		}
+		return state;
 	}
 
 	public void setMyState(char[][] myState) {
-		this.myState = myState;
+		myBits[BLACK] = 0;
+		myBits[WHITE] = 0;
+		myEvaluator = new Evaluator();
+		myHash = 0;
+		for (int i = 0; i < 6; i++) {
+			for (int j = 0; j < 6; j++) {
+				if (myState[i][j] != '\u0000') {
+					addToBoard(i, j, myState[i][j]);
+				}
+			}
+		}
 	}
-
-	public int getMyHeuristic() {
-		return myHeuristic;
+	
+	public long getBits(int colorIndex) {
+		return myBits[colorIndex];
+	}
+	
+	/**
+	 * @return a mask of all the empty cells on the board.
+	 */
+	public long getEmptyBits() {
+		return ~(myBits[BLACK] | myBits[WHITE]) & FULL_BOARD;
+	}
+	
+	/**
+	 * Returns the piece at a location on the board.
+	 * 
+	 * @param row the row of target location.
+	 * @param col the column of target location.
+	 * @return 'B', 'W' or '\u0000' if the spot is empty.
+	 */
+	public char cellAt(int row, int col) {
+		long bit = 1L << (row * 6 + col);
+		if ((myBits[BLACK] & bit) != 0) {
+			return 'B';
+		} else if ((myBits[WHITE] & bit) != 0) {
+			return 'W';
+		}
+		return '\u0000';
 	}
 
-	public void setMyHeuristic(int myHeuristic) {
-		this.myHeuristic = myHeuristic;
+	public Evaluator getEvaluator() {
+		return myEvaluator;
+	}
+	
+	/**
+	 * Returns the 64-bit zobrist hash of the position. Two boards with
+	 * the same pieces on the same cells always have the same hash.
+	 * 
+	 * @return the hash of the position.
+	 */
+	public long getHash() {
+		return myHash;
+	}
+	
+	/**
+	 * Computes the zobrist hash from scratch instead of using the one
+	 * that is kept up to date by placements and rotations.
+	 * 
+	 * @return the hash of the position.
+	 */
+	public long computeHash() {
+		long hash = 0;
+		for (int color = BLACK; color <= WHITE; color++) {
+			for (long bits = myBits[color]; bits != 0; bits &= bits - 1) {
+				hash ^= ZOBRIST[color][Long.numberOfTrailingZeros(bits)];
+			}
+		}
+		return hash;
+	}
+	
+	/**
+	 * Used in VERIFY_HASH mode to catch an update that left the hash
+	 * out of step with the board.
+	 */
+	private void verifyHash() {
+		if (myHash != computeHash()) {
+			throw new IllegalStateException("Hash " + Long.toHexString(myHash)
+					+ " does not match the board " + Long.toHexString(computeHash()));
+		}
 	}
 	
 	/**
@@ -91,27 +373,7 @@ public class GameBoard {
 	 * @param blockNum the quadrant that will rotate.
 	 */
 	public void rotateClockwise(int blockNum) {
-		char temp;
-		int offsetRow = 0, offsetCol = 0;
-		if (blockNum == 2) {
-			offsetCol = 3;
-		} else if(blockNum == 3) {
-			offsetRow = 3;
-		} else if(blockNum == 4) {
-			offsetRow = 3;
-			offsetCol = 3;
-		}
-		temp = myState[0 + offsetRow][0 + offsetCol];
-		myState[0 + offsetRow][0 + offsetCol] = myState[2 + offsetRow][0 + offsetCol];
-		myState[2 + offsetRow][0 + offsetCol] = myState[2 + offsetRow][2 + offsetCol];
-		myState[2 + offsetRow][2 + offsetCol] = myState[0 + offsetRow][2 + offsetCol];
-		myState[0 + offsetRow][2 + offsetCol] = temp;
-		temp = myState[0 + offsetRow][1 + offsetCol];
-		myState[0 + offsetRow][1 + offsetCol] = myState[1 + offsetRow][0 + offsetCol];
-		myState[1 + offsetRow][0 + offsetCol] = myState[2 + offsetRow][1 + offsetCol];
-		myState[2 + offsetRow][1 + offsetCol] = myState[1 + offsetRow][2 + offsetCol];
-		myState[1 + offsetRow][2 + offsetCol] = temp;
-		
+		rotateQuadrant(blockToQuadrant(blockNum), 1);
 	}
 	
 	/**
@@ -122,9 +384,27 @@ public class GameBoard {
 	 * @param blockNum the quadrant that will rotate.
 	 */
 	public void rotateCounterClockwise(int blockNum) {
-		rotateClockwise(blockNum);
-		rotateClockwise(blockNum);
-		rotateClockwise(blockNum);
+		rotateQuadrant(blockToQuadrant(blockNum), 0);
+	}
+	
+	/**
+	 * Rotates a quadrant of both colors with a table lookup.
+	 * 
+	 * @param quadrant the quadrant index (0-3).
+	 * @param dir direction of rotation. 0=CounterClockwise 1=Clockwise
+	 */
+	public void rotateQuadrant(int quadrant, int dir) {
+		for (int color = BLACK; color <= WHITE; color++) {
+			long before = myBits[color];
+			int pattern = quadrantPattern(before, quadrant);
+			int rotated = ROTATION[dir][pattern];
+			myBits[color] = (before & ~QUADRANT_MASK[quadrant]) | scatterQuadrant(rotated, quadrant);
+			myHash ^= QUADRANT_ZOBRIST[color][quadrant][pattern] ^ QUADRANT_ZOBRIST[color][quadrant][rotated];
+			myEvaluator.update(color, before, myBits[color]);
+		}
+		if (VERIFY_HASH) {
+			verifyHash();
+		}
 	}
 	
 	/**
@@ -136,7 +416,30 @@ public class GameBoard {
 	 * @param playerColor the piece that is being placed. Either 'w' or 'b'.
 	 */
 	public void addToBoard(int row, int col, char playerColor) {
-		this.myState[row][col] = playerColor;
+		int cell = row * 6 + col;
+		long bit = 1L << cell;
+		int color = -1;
+		if (playerColor != '\u0000') {
+			color = colorIndex(playerColor);
+			if (color < 0) {
+				throw new IllegalArgumentException("Invalid color: " + playerColor);
+			}
+		}
+		for (int c = BLACK; c <= WHITE; c++) {
+			if ((myBits[c] & bit) != 0 && c != color) {
+				myBits[c] &= ~bit;
+				myHash ^= ZOBRIST[c][cell];
+				myEvaluator.remove(cell, c);
+			}
+		}
+		if (color >= 0 && (myBits[color] & bit) == 0) {
+			myBits[color] |= bit;
+			myHash ^= ZOBRIST[color][cell];
+			myEvaluator.add(cell, color);
+		}
+		if (VERIFY_HASH) {
+			verifyHash();
+		}
 	}
 	
 	/**
@@ -156,184 +459,63 @@ public class GameBoard {
 	}
 	
 	/**
-	 * This method clears the current heuristic of the current player.
-	 * This applies to the heuristic of the alpha and beta players or
-	 * max/min players.
-	 */
-	public void clearHeuristic() {
-		this.myHeuristic = 0;
-	}
-	
-	/**
-	 * Method to determine whether game is over. Calls helper methods
-	 * to check whether there are 5 of one color in a row or if it is
-	 * a cat's game and no winner.
+	 * Method to determine whether game is over. Either color has 5
+	 * in a row or it is a cat's game and no winner.
 	 * 
 	 * @return whether game is over or not.
 	 */
 	public boolean isGameOver() {
-		int countEmptySpots = 0;
-		
-		for (int i = 0; i < 6; i++) {
-			for (int j = 0; j < 6; j++) {
-				if (myState[i][j] == '\u0000') {
-					countEmptySpots++;
-				}
-			}
-		}
-		
-		if (!checkHorizontal() && !checkVertical() 
-				&& !checkDiagnalLeft() && !checkDiagnalRight()
-				&& countEmptySpots > 0) {
-			return false;
-		}
-		
-		return true;
-	}
-	
-	/**
-	 * Checks if there are 5 of one color in a row horizontally. 
-	 * 
-	 * @return whether there are 5 of one color in a horizontal row.
-	 */
-	private boolean checkHorizontal() {
-		int count = 1;
-		char previousChar = '\u0000';
-		char currentChar;
-		for (int i = 0; i < 6; i++) {//row
-			for (int j = 0; j < 6; j++) {//column
-				currentChar = myState[i][j];
-				if (currentChar == previousChar) {
-					count++;
-					
-					if (count == 5 && currentChar != '\u0000') {
-						return true;
-					}
-				} else {
-					count = 1;
-					previousChar = currentChar;
-				}
-			}
-		}
-		return false;
+		return getResult() != IN_PROGRESS;
 	}
 	
 	/**
-	 * Checks if there are 5 of one color in a row vertically.
+	 * Determines the state of the game. A rotation can give both colors
+	 * 5 in a row at once, which is a draw just like a full board. This
+	 * is called at every node of the search, so it only tests the
+	 * precomputed lines and does not allocate.
 	 * 
-	 * @return whether there are 5 of one color in a vertical row.
+	 * @return IN_PROGRESS, BLACK_WINS, WHITE_WINS or DRAW.
 	 */
-	private boolean checkVertical() {
-		int count = 1;
-		char previousChar = '\u0000';
-		char currentChar;
-		for (int i = 0; i < 6; i++) {//column
-			for (int j = 0; j < 6; j++) {//row
-				currentChar = myState[j][i];
-				if (currentChar == previousChar) {
-					count++;
-					
-					if (count == 5 && currentChar != '\u0000') {
-						return true;
-					}
-				} else {
-					count = 1;
-					previousChar = currentChar;
-				}
-			}
+	public int getResult() {
+		boolean blackWon = hasFive(myBits[BLACK]);
+		boolean whiteWon = hasFive(myBits[WHITE]);
+		if (blackWon && whiteWon) {
+			return DRAW;
+		} else if (blackWon) {
+			return BLACK_WINS;
+		} else if (whiteWon) {
+			return WHITE_WINS;
+		} else if (getEmptyBits() == 0) {
+			return DRAW;
 		}
-		return false;
+		return IN_PROGRESS;
 	}
 	
 	/**
-	 * Checks if there are 5 of one color in a row diagonally 
-	 * (top left to bottom right)
+	 * Checks whether a color has 5 of its pieces in a row.
 	 * 
-	 * @returnwhether there are 5 in a row diagonally.
+	 * @param color the color in question. Either 'B' or 'W'.
+	 * @return whether the color has 5 in a row.
 	 */
-	private boolean checkDiagnalLeft() {
-		int count = 1;
-		char previousChar = '\u0000';
-		char currentChar = '\u0000';
-		int offset1 = 0, offset2 = 0;
-		boolean inBound;
-		for (int m = 0; m < 3; m++) {
-			int j = 0;
-			if (m == 1) {
-				offset1 = 1;
-				offset2 = 0;
-			} else if (m == 2) {
-				offset1 = 0;
-				offset2 = 1;
-			}
-			for (int i = 0; i < 6; i++) {//iterate through rows
-				inBound = false;
-				if (i + offset1 < 6 && j + offset2 < 6) {
-					currentChar = myState[i + offset1][j + offset2];
-					j++;
-					inBound = true;
-				}
-				if (currentChar == previousChar && inBound) {
-					count++;
-					
-					if (count == 5 && currentChar != '\u0000') {
-						return true;
-					}
-				} else {
-					count = 1;
-					previousChar = currentChar;
-				}
-			}
-		}
-		
-		return false;
+	public boolean hasWon(char color) {
+		return hasFive(myBits[colorIndex(color)]);
 	}
 	
 	/**
-	 * Checks if there are 5 of one color in a row diagonally 
-	 * (bottom right to top left)
+	 * Checks a single color bitboard against the 32 winning lines.
 	 * 
-	 * @returnwhether there are 5 in a row diagonally.
+	 * @param bits the bitboard of one color.
+	 * @return whether there are 5 in a row.
 	 */
-	private boolean checkDiagnalRight() {
-		int count = 1;
-		char previousChar = '\u0000';
-		char currentChar = '\u0000';
-		int offset1 = 0, offset2 = 0;
-		boolean inBound = false;
-		for (int m = 0; m < 3; m++) {
-			int j = 0;
-			if (m == 1) {
-				offset1 = 1;
-				offset2 = 0;
-			} else if (m == 2) {
-				offset1 = 0;
-				offset2 = 1;
-			}
-			for (int i = 5; i >= 0; i--) {//iterate through rows
-				inBound = false;
-				if (i - offset1 >= 0 && j + offset2 < 6) {
-					currentChar = myState[i - offset1][j + offset2];
-					j++;
-					inBound = true;
-				}
-				if (currentChar == previousChar && inBound) {
-					count++;
-					
-					if (count == 5 && currentChar != '\u0000') {
-						return true;
-					}
-				} else {
-					count = 1;
-					previousChar = currentChar;
-				}
+	public static boolean hasFive(long bits) {
+		for (int i = 0; i < WIN_LINES.length; i++) {
+			if ((bits & WIN_LINES[i]) == WIN_LINES[i]) {
+				return true;
 			}
 		}
-		
 		return false;
 	}
 	
-	
 	/**
 	 * Determines whether the target location is occupied by another
 	 * piece or if it is empty.
@@ -343,11 +525,7 @@ public class GameBoard {
 	 * @return whether the spot is occupied or not.
 	 */
 	public boolean isValidMove(int row, int col) {
-		if (myState[row][col] == '\u0000') {
-			return true;
-		}
-		return false;
-		
+		return (getEmptyBits() & (1L << (row * 6 + col))) != 0;
 	}
 	
 	/**
@@ -492,8 +670,7 @@ public class GameBoard {
 	 * @param color the color of the current player's piece.
 	 */
 	public void performMove(int row, int col, char color) {
-		myState[row][col] = color;
-		
+		addToBoard(row, col, color);
 	}
 	
 	/**
@@ -511,15 +688,14 @@ public class GameBoard {
 		int col = 0;
 		int block = 0; // block to rotate
 		int dir = 0; // 0 is left, 1 is right
-		ArrayList<GameBoard> tempList = new ArrayList<GameBoard>();
+		long empty = getEmptyBits();
 		for (dir = 0; dir < 2; dir++) {
 			for (block = 0; block < 4; block++) {
-				for(row = 0; row < 6; row++) {
-					for(col = 0; col < 6; col++) {
-						if(myState[row][col] == '\u0000') {
-							nextMoves.add(new int[] {row, col, block, dir});
-						}
-					}
+				for (long spots = empty; spots != 0; spots &= spots - 1) {
+					int cell = Long.numberOfTrailingZeros(spots);
+					row = cell / 6;
+					col = cell % 6;
+					nextMoves.add(new int[] {row, col, block, dir});
 				}
 			}
 		}
@@ -527,13 +703,117 @@ public class GameBoard {
 		return nextMoves;
 	}
 	
+	/**
+	 * Writes the moves of the position into a buffer that the caller
+	 * keeps around, so no lists or arrays are created. The moves come
+	 * out in the same order as getChildren: direction, quadrant, then
+	 * cell. Moves that lead to the same position as an earlier move
+	 * are left out:
+	 *   - turning a quadrant that looks the same after a quarter turn
+	 *     (an empty one, for example) changes nothing, and turning the
+	 *     quadrant that was placed in can end up as the old quadrant
+	 *     plus one piece. Either way the position is the same as placing
+	 *     on that cell without turning anything, so only the first such
+	 *     move is kept for each cell.
+	 *   - if a quadrant looks the same after a half turn, turning it
+	 *     clockwise gives the same position as counter-clockwise.
+	 *   - placing in such a quadrant and turning it clockwise gives the
+	 *     same position as placing in the opposite cell and turning it
+	 *     counter-clockwise.
+	 * Only whole quadrant patterns are looked up, so the check is cheap.
+	 * 
+	 * @param moves buffer of at least MAX_MOVES for the packed moves.
+	 * @param color the bitboard index of the color to move.
+	 * @return the number of moves written.
+	 */
+	public int generateMoves(int[] moves, int color) {
+		long empty = getEmptyBits();
+		long unrotated = 0;	//cells whose move that changes nothing was already written
+		int count = 0;
+		for (int dir = 0; dir < 2; dir++) {
+			for (int quadrant = 0; quadrant < 4; quadrant++) {
+				int rotation = (quadrant << 6) | (dir << 8);
+				int black = quadrantPattern(myBits[BLACK], quadrant);
+				int white = quadrantPattern(myBits[WHITE], quadrant);
+				boolean quarterTurn = QUARTER_TURN_SYMMETRIC[black] && QUARTER_TURN_SYMMETRIC[white];
+				boolean halfTurn = HALF_TURN_SYMMETRIC[black] && HALF_TURN_SYMMETRIC[white];
+				for (long spots = empty; spots != 0; spots &= spots - 1) {
+					int cell = Long.numberOfTrailingZeros(spots);
+					long bit = 1L << cell;
+					if ((QUADRANT_MASK[quadrant] & bit) == 0) {
+						if (quarterTurn) {
+							if ((unrotated & bit) != 0) {
+								continue;
+							}
+							unrotated |= bit;
+						} else if (dir == 1 && halfTurn) {
+							continue;
+						}
+					} else {
+						int mine = color == BLACK ? black : white;
+						int theirs = color == BLACK ? white : black;
+						int placed = mine | 1 << ((cell / 6 % 3) * 3 + cell % 3);
+						int rotatedMine = ROTATION[dir][placed];
+						int added = rotatedMine & ~mine;
+						if (ROTATION[dir][theirs] == theirs && (mine & ~rotatedMine) == 0
+								&& (added & (added - 1)) == 0) {
+							//same as placing on the one new cell and not turning anything.
+							long same = scatterQuadrant(added, quadrant);
+							if ((unrotated & same) != 0) {
+								continue;
+							}
+							unrotated |= same;
+						} else if (dir == 1 && (halfTurn || (HALF_TURN_SYMMETRIC[placed]
+								&& HALF_TURN_SYMMETRIC[theirs]))) {
+							continue;
+						}
+					}
+					moves[count++] = cell | rotation;
+				}
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Places a piece and rotates a quadrant as one packed move.
+	 * 
+	 * @param move the packed move.
+	 * @param color the bitboard index of the piece's color.
+	 */
+	public void makeMove(int move, int color) {
+		int cell = Move.getCell(move);
+		myBits[color] |= 1L << cell;
+		myHash ^= ZOBRIST[color][cell];
+		myEvaluator.add(cell, color);
+		rotateQuadrant(Move.getQuadrant(move), Move.getDirection(move));
+	}
+	
+	/**
+	 * Takes back a move made by makeMove: rotates the quadrant the
+	 * other way and takes the piece off the board.
+	 * 
+	 * @param move the packed move.
+	 * @param color the bitboard index of the piece's color.
+	 */
+	public void unmakeMove(int move, int color) {
+		int cell = Move.getCell(move);
+		rotateQuadrant(Move.getQuadrant(move), 1 - Move.getDirection(move));
+		myBits[color] &= ~(1L << cell);
+		myHash ^= ZOBRIST[color][cell];
+		myEvaluator.remove(cell, color);
+		if (VERIFY_HASH) {
+			verifyHash();
+		}
+	}
+	
 	/**
 	 * This method prints an ascii version of the gameboard state.
 	 * white players are marked as 'w' and black players are marked
 	 * as 'b'. blank spaces are just just blank characters (aka. '\u0000').
 	 */
 	public void displayGameBoard() {
-		char temp[][] = myState;
+		char temp[][] = getMyState();
 		for (int i = 0; i < 6; i++) {
 			for (int j = 0; j < 6; j++) {
 				if (i % 3 == 0 && j == 0) {
@@ -566,219 +846,30 @@ public class GameBoard {
 	 * @return whether the gameboard states are identical or not.
 	 */
 	public boolean equals(GameBoard theGameBoard) {
-		if ((theGameBoard.myState).equals(this.myState)) {
-			return true;
-		}
-		return false;
+		return theGameBoard.myHash == myHash
+				&& theGameBoard.myBits[BLACK] == myBits[BLACK]
+				&& theGameBoard.myBits[WHITE] == myBits[WHITE];
+	}
+	
+	@Override
+	public boolean equals(Object theObject) {
+		return theObject instanceof GameBoard && equals((GameBoard) theObject);
+	}
+	
+	@Override
+	public int hashCode() {
+		return (int) (myHash ^ (myHash >>> 32));
 	}
 
 	/**
 	 * Adds up the heuristic: available spots left + points for how many
-	 * pieces the player has in a row.
+	 * pieces the player has in a row. The counts behind it are kept up
+	 * to date by every placement and rotation, so this is only a sum.
 	 * 
 	 * @param isAlphaPlayer whether the player in question is alpha.
 	 * @return the heuristic score.
 	 */
 	public int getHeuristicValue(boolean isAlphaPlayer) {
-		char previousChar = '$';
-		char currentChar = '\u0000';
-		char myColor;
-		if (isAlphaPlayer) {
-			myColor = player1color;
-		} else {
-			myColor = player2color;
-		}
-		int numAvailableWinningSpots = 0, countEmpty = 0, 
-				offset1 = 0, offset2 = 0, count = 1;
-		
-		//horizontal
-		for (int i = 0; i < 6; i++) {
-			for (int j = 0; j < 6; j++) {
-				currentChar = myState[i][j];
-				
-				if (myState[i][j] == '\u0000' || currentChar == myColor) {
-					countEmpty++;
-					if (countEmpty == 5) {
-						numAvailableWinningSpots++;
-					} if (countEmpty == 6) {
-						numAvailableWinningSpots++;
-					}
-				} else {
-					countEmpty = 0;
-				}
-				
-				if (currentChar == previousChar && currentChar != '\u0000') {
-					count++;
-					
-					countNumInArow(currentChar, previousChar, count, isAlphaPlayer);
-					
-				} else {
-					count = 1;
-					previousChar = currentChar;
-				}
-			}
-			countEmpty = 0;
-			previousChar = '$';
-		}
-		countEmpty = 0;
-		
-		//vertical
-		for (int j = 0; j < 6; j++) {
-			for (int i = 0; i < 6; i++) {
-				currentChar = myState[i][j];
-				
-				if (myState[i][j] == '\u0000' || currentChar == myColor) {
-					countEmpty++;
-					if (countEmpty == 5) {
-						numAvailableWinningSpots++;
-					} if (countEmpty == 6) {
-						numAvailableWinningSpots++;
-					}
-				} else {
-					countEmpty = 0;
-				}
-
-				if (currentChar == previousChar && currentChar != '\u0000') {
-					count++;
-					
-					countNumInArow(currentChar, previousChar, count, isAlphaPlayer);
-					
-				} else {
-					count = 1;
-					previousChar = currentChar;
-				}
-			}
-			countEmpty = 0;
-			previousChar = '$';
-		}
-		countEmpty = 0;
-		//bottom left to upper right
-		for (int m = 0; m < 3; m++) {
-			int j = 0;
-			if (m == 1) { offset1 = 1; offset2 = 0;}
-			if (m == 2) { offset1 = 0; offset2 = 1;}
-			for (int i = 5; i >= 0; i--) {
-				
-				if (i - offset1 >= 0 && j + offset2 < 6) {
-					currentChar = myState[i - offset1][j + offset2];
-					if (currentChar == '\u0000' || currentChar == myColor) {
-						countEmpty++;
-						if (countEmpty == 5) {
-							numAvailableWinningSpots++;
-						} if (countEmpty == 6) {
-							numAvailableWinningSpots++;
-						}
-					}else {
-						countEmpty = 0;
-					}
-					if (currentChar == previousChar && currentChar != '\u0000') {
-						count++;
-						
-						countNumInArow(currentChar, previousChar, count, isAlphaPlayer);
-						
-					} else {
-						count = 1;
-						previousChar = currentChar;
-					}
-				} 
-				j++;
-			}
-			previousChar = '$';
-			countEmpty = 0;
-		}
-		countEmpty = 0;
-		offset1 = 0; 
-		offset2 = 0;
-		
-		//upper left to bottom right
-		for (int m = 0; m < 3; m++) {
-			int j = 0;
-			if (m == 1) { offset1 = 1; offset2 = 0;}
-			if (m == 2) { offset1 = 0; offset2 = 1;}
-			for (int i = 0; i < 6; i++) {
-				if (i + offset1 < 6 && j + offset2 < 6) {
-					currentChar = myState[i + offset1][j + offset2];
-					if (currentChar == '\u0000' || currentChar == myColor) {
-						countEmpty++;
-						if (countEmpty == 5) {
-							numAvailableWinningSpots++;
-						} if (countEmpty == 6) {
-							numAvailableWinningSpots++;
-						}
-					} else {
-						countEmpty = 0;
-					}
-					
-					if (currentChar == previousChar && currentChar != '\u0000') {
-						count++;
-						
-						countNumInArow(currentChar, previousChar, count, isAlphaPlayer);
-						
-					} else { 
-						count = 1;
-						previousChar = currentChar;
-					}
-				} 
-				j++;
-			}
-			previousChar = '$';
-			countEmpty = 0;
-		}
-		return (numAvailableWinningSpots + myHeuristic);
-	}
-	
-	/**
-	 * Helper function for the getHeuristicValue to count how many pieces
-	 * the player in question has in a row. This method also determines
-	 * the point value given to 2, 3, 4, 5 pieces of one color in a row.
-	 * 
-	 * @param currentChar the current character.
-	 * @param previousChar the previous character.
-	 * @param count the count of how many of one character is in a row.
-	 * @param isAlphaPlayer whether the current player is alpha or not.
-	 */
-	public void countNumInArow(char currentChar, char previousChar, int count, boolean isAlphaPlayer) {
-		if (isAlphaPlayer) {
-			if (count == 5 && player2color == currentChar) {
-				myHeuristic += 500;
-			} else if (count == 4 && player2color == currentChar) {
-				myHeuristic += 50;
-			} else if (count == 3 && player2color == currentChar) {
-				myHeuristic += 20;
-			} else if (count == 2 && player2color == currentChar) {
-				myHeuristic += 10;
-			} 
-			
-			if (count == 5 && player1color == currentChar) {
-				myHeuristic -= 500;
-			} else if (count == 4 && player1color == currentChar) {
-				myHeuristic -= 50;
-			} else if (count == 3 && player1color == currentChar) {
-				myHeuristic -= 20;
-			} else if (count == 2 && player1color == currentChar) {
-				myHeuristic -= 10;
-			} 
-		} else {
-			if (count == 5 && player2color == currentChar) {
-				myHeuristic -= 500;
-			} else if (count == 4 && player2color == currentChar) {
-				myHeuristic -= 50;
-			} else if (count == 3 && player2color == currentChar) {
-				myHeuristic -= 20;
-			} else if (count == 2 && player2color == currentChar) {
-				myHeuristic -= 10;
-			} 
-			
-			if (count == 5 && player1color == currentChar) {
-				myHeuristic += 500;
-			} else if (count == 4 && player1color == currentChar) {
-				myHeuristic += 50;
-			} else if (count == 3 && player1color == currentChar) {
-				myHeuristic += 20;
-			} else if (count == 2 && player1color == currentChar) {
-				myHeuristic += 10;
-			} 
-		}
-		
+		return myEvaluator.getScore(isAlphaPlayer, colorIndex(player1color), colorIndex(player2color));
 	}
 }
@@ -0,0 +1,309 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a Monte Carlo tree search (UCT). Instead of scoring
+ * positions with the heuristic, it plays random games to the end and
+ * grows a tree towards the moves that win most often, trying the
+ * others now and then in case they were unlucky.
+ *
+ * The tree is kept in a fixed arena of primitive arrays indexed by
+ * node, and the children of a node are stored next to each other. The
+ * random games are played on two longs, without a GameBoard.
+ *
+ * Several threads share one tree. A thread that walks through a node
+ * adds a virtual loss to it until its game is finished, so the other
+ * threads are steered towards other moves instead of all playing the
+ * same line.
+ */
+public class MonteCarloSearch {
+	public static final int DEFAULT_NODES = 1 << 21;		//about 40 MB.
+	public static final long DEFAULT_PLAYOUTS = 100000;	//budget when no other limit is given.
+	private static final double EXPLORATION = 1.0;		//the UCT constant.
+	private static final int VIRTUAL_LOSS = 3;			//lost games a thread adds to a node it walks through.
+	private static final int EXPAND_VISITS = 8;			//visits a leaf needs before it is expanded.
+
+	//node states in childCount, next to the number of children.
+	private static final int UNEXPANDED = -1;
+	private static final int LEAF = -2;				//being expanded, or the arena is full.
+
+	private final int threads;
+	private final int capacity;
+	//the arena. The root is node 0.
+	private final int[] moves;					//move that leads to the node.
+	private final int[] firstChild;
+	private final AtomicIntegerArray childCount;
+	private final AtomicIntegerArray visits;
+	private final AtomicIntegerArray score;		//half-points for the player who moved into the node: win 2, draw 1.
+	private final AtomicInteger nextNode = new AtomicInteger();
+
+	private final AtomicLong playouts = new AtomicLong();
+	private final AtomicInteger maxDepth = new AtomicInteger();
+	private long deadline;						//System.nanoTime() to stop at, 0 for none.
+	private long playoutLimit;					//playouts to stop at, 0 for none.
+	private volatile boolean stopRequested;
+
+	public MonteCarloSearch(int threads) {
+		this(threads, DEFAULT_NODES);
+	}
+
+	/**
+	 * @param threads number of threads that search.
+	 * @param capacity number of nodes in the arena. When it is full the
+	 * tree stops growing and the search goes on with the nodes it has.
+	 */
+	public MonteCarloSearch(int threads, int capacity) {
+		this.threads = Math.max(1, threads);
+		this.capacity = capacity;
+		moves = new int[capacity];
+		firstChild = new int[capacity];
+		childCount = new AtomicIntegerArray(capacity);
+		visits = new AtomicIntegerArray(capacity);
+		score = new AtomicIntegerArray(capacity);
+	}
+
+	/**
+	 * Searches until the time or playout budget of the limits runs out,
+	 * or stop() is called. The depth of the limits is not used. When
+	 * neither budget is set, DEFAULT_PLAYOUTS games are played.
+	 *
+	 * @param gameBoard the gameboard, which is not changed.
+	 * @param alphaPlayer whether the AI is an alpha player.
+	 * @param limits the budget of the search.
+	 * @return the most visited move, its win rate from the max (alpha)
+	 * player's point of view as a score from -1000 to 1000, the number of
+	 * playouts as the nodes and the depth of the deepest line in the tree.
+	 */
+	public SearchResult search(GameBoard gameBoard, boolean alphaPlayer, SearchLimits limits) {
+		long start = System.nanoTime();
+		deadline = limits.getTimeMillis() > 0 ? start + limits.getTimeMillis() * 1000000 : 0;
+		playoutLimit = limits.getNodes() > 0 || deadline > 0 ? limits.getNodes() : DEFAULT_PLAYOUTS;
+		playouts.set(0);
+		maxDepth.set(0);
+		int color = GameBoard.colorIndex(alphaPlayer ? gameBoard.player1color : gameBoard.player2color);
+
+		SearchResult result = new SearchResult();
+		if (gameBoard.getResult() != GameBoard.IN_PROGRESS) {
+			return result;
+		}
+		GameBoard root = new GameBoard(gameBoard);
+		initNode(0, Move.NONE);
+		nextNode.set(1);
+		expand(0, root, color, true);
+
+		Thread[] workers = new Thread[threads - 1];
+		for (int i = 0; i < workers.length; i++) {
+			GameBoard copy = new GameBoard(root);
+			long seed = start + i + 1;
+			workers[i] = new Thread(() -> work(copy, color, seed), "mcts-" + (i + 1));
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		work(root, color, start);
+		for (Thread worker : workers) {
+			try {
+				worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		int best = firstChild[0];
+		for (int child = firstChild[0]; child < firstChild[0] + childCount.get(0); child++) {
+			if (visits.get(child) > visits.get(best)) {
+				best = child;
+			}
+		}
+		int winRate = visits.get(best) == 0 ? 0 : (int) (1000L * (score.get(best) - visits.get(best)) / visits.get(best));
+		result.setBestMove(moves[best]);
+		result.setScore(alphaPlayer ? winRate : -winRate);
+		result.setDepth(maxDepth.get());
+		result.setNodes(playouts.get());
+		result.setTimeMillis((System.nanoTime() - start) / 1000000);
+		return result;
+	}
+
+	/**
+	 * Asks a running search to stop. It returns the move it would play
+	 * now. The request stays until clearStop, so a stop() that comes
+	 * before the search starts is not lost.
+	 */
+	public void stop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * Takes back a stop() before the next search is started.
+	 */
+	public void clearStop() {
+		stopRequested = false;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the number of nodes in the tree of the last search.
+	 */
+	public int getTreeSize() {
+		return Math.min(nextNode.get(), capacity);
+	}
+
+	private void initNode(int node, int move) {
+		moves[node] = move;
+		childCount.set(node, UNEXPANDED);
+		visits.set(node, 0);
+		score.set(node, 0);
+	}
+
+	/**
+	 * Adds the children of a node. Only the thread that changed the
+	 * node from UNEXPANDED to LEAF calls this, and the children are
+	 * visible to the other threads once childCount is set.
+	 */
+	private void expand(int node, GameBoard gameBoard, int color, boolean root) {
+		int[] buffer = new int[GameBoard.MAX_MOVES];
+		int numMoves = gameBoard.generateMoves(buffer, color);
+		if (root) {
+			numMoves = Symmetry.removeSymmetricMoves(gameBoard, buffer, numMoves, color,
+					new long[GameBoard.MAX_MOVES]);
+		}
+		int first = nextNode.getAndAdd(numMoves);
+		if (first + numMoves > capacity) {
+			return;		//the arena is full, the node stays a leaf.
+		}
+		for (int i = 0; i < numMoves; i++) {
+			initNode(first + i, buffer[i]);
+		}
+		firstChild[node] = first;
+		childCount.set(node, numMoves);
+	}
+
+	/**
+	 * Picks the child with the best upper confidence bound. Children no
+	 * game has been through yet come first.
+	 */
+	private int select(int node, int count) {
+		int first = firstChild[node];
+		double logVisits = Math.log(Math.max(1, visits.get(node)));
+		int best = first;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for (int child = first; child < first + count; child++) {
+			int childVisits = visits.get(child);
+			if (childVisits == 0) {
+				return child;
+			}
+			double value = score.get(child) / (2.0 * childVisits)
+					+ EXPLORATION * Math.sqrt(logVisits / childVisits);
+			if (value > bestValue) {
+				best = child;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The loop of one thread: walk down the tree, expand the leaf, play
+	 * a random game from it and add the result to every node on the
+	 * way, until the budget runs out.
+	 *
+	 * @param gameBoard the root position, only used by this thread.
+	 * @param rootColor the bitboard index of the color to move at the root.
+	 * @param seed seed of the random games.
+	 */
+	private void work(GameBoard gameBoard, int rootColor, long seed) {
+		int[] path = new int[GameBoard.CELLS + 1];
+		int[] movers = new int[GameBoard.CELLS + 1];
+		long random = seed | 1;
+		while (!stopRequested) {
+			long count = playouts.incrementAndGet();
+			if ((playoutLimit > 0 && count > playoutLimit) || (deadline > 0 && System.nanoTime() > deadline)) {
+				playouts.decrementAndGet();
+				break;
+			}
+			int node = 0;
+			int color = rootColor;
+			int length = 0;
+			visits.incrementAndGet(0);
+			int numChildren;
+			while ((numChildren = childCount.get(node)) > 0) {
+				node = select(node, numChildren);
+				visits.addAndGet(node, VIRTUAL_LOSS);
+				gameBoard.makeMove(moves[node], color);
+				path[length] = node;
+				movers[length++] = color;
+				color ^= 1;
+			}
+			int result = gameBoard.getResult();
+			if (result == GameBoard.IN_PROGRESS && visits.get(node) >= EXPAND_VISITS
+					&& childCount.compareAndSet(node, UNEXPANDED, LEAF)) {
+				expand(node, gameBoard, color, false);
+			}
+			if (result == GameBoard.IN_PROGRESS) {
+				random = random * 6364136223846793005L + 1442695040888963407L;
+				result = playout(gameBoard.getBits(GameBoard.BLACK), gameBoard.getBits(GameBoard.WHITE),
+						color, random);
+			}
+			if (length > maxDepth.get()) {
+				maxDepth.accumulateAndGet(length, Math::max);
+			}
+			for (int i = length - 1; i >= 0; i--) {
+				int mover = movers[i];
+				visits.addAndGet(path[i], 1 - VIRTUAL_LOSS);
+				if (result == GameBoard.DRAW) {
+					score.addAndGet(path[i], 1);
+				} else if (result == (mover == GameBoard.BLACK ? GameBoard.BLACK_WINS : GameBoard.WHITE_WINS)) {
+					score.addAndGet(path[i], 2);
+				}
+				gameBoard.unmakeMove(moves[path[i]], mover);
+			}
+		}
+	}
+
+	/**
+	 * Plays random moves until the game is over: a random empty cell,
+	 * then a random rotation.
+	 *
+	 * @param black the black bitboard.
+	 * @param white the white bitboard.
+	 * @param color the bitboard index of the color to move.
+	 * @param seed seed of the random moves.
+	 * @return BLACK_WINS, WHITE_WINS or DRAW.
+	 */
+	static int playout(long black, long white, int color, long seed) {
+		long random = seed;
+		while (true) {
+			long empty = GameBoard.FULL_BOARD & ~(black | white);
+			if (empty == 0) {
+				return GameBoard.DRAW;
+			}
+			//xorshift
+			random ^= random << 13;
+			random ^= random >>> 7;
+			random ^= random << 17;
+			int k = (int) (((random >>> 32) * Long.bitCount(empty)) >>> 32);
+			for (; k > 0; k--) {
+				empty &= empty - 1;
+			}
+			long cell = Long.lowestOneBit(empty);
+			if (color == GameBoard.BLACK) {
+				black |= cell;
+			} else {
+				white |= cell;
+			}
+			int quadrant = (int) random & 3;
+			int dir = (int) (random >>> 2) & 1;
+			black = GameBoard.rotateBits(black, quadrant, dir);
+			white = GameBoard.rotateBits(white, quadrant, dir);
+			boolean blackWon = GameBoard.hasFive(black);
+			boolean whiteWon = GameBoard.hasFive(white);
+			if (blackWon || whiteWon) {
+				return blackWon && whiteWon ? GameBoard.DRAW : blackWon ? GameBoard.BLACK_WINS : GameBoard.WHITE_WINS;
+			}
+			color ^= 1;
+		}
+	}
+}
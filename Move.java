@@ -0,0 +1,99 @@
+/**
+ * This class packs a move into a single int so moves can be stored
+ * in tables and arrays without allocating anything.
+ *
+ * bits 0-5: cell of the placed piece (row * 6 + col).
+ * bits 6-7: quadrant that is rotated (0-3).
+ * bit  8:   direction of rotation. 0=CounterClockwise 1=Clockwise
+ */
+public class Move {
+	public static final int NONE = -1;		//no move.
+	public static final int LIMIT = 512;	//every move is below this, so it can index a table.
+
+	private Move() {
+		//only static helpers
+	}
+
+	public static int encode(int cell, int quadrant, int dir) {
+		return cell | (quadrant << 6) | (dir << 8);
+	}
+
+	public static int encode(int row, int col, int quadrant, int dir) {
+		return encode(row * 6 + col, quadrant, dir);
+	}
+
+	public static int getCell(int move) {
+		return move & 63;
+	}
+
+	public static int getRow(int move) {
+		return (move & 63) / 6;
+	}
+
+	public static int getCol(int move) {
+		return (move & 63) % 6;
+	}
+
+	public static int getQuadrant(int move) {
+		return (move >>> 6) & 3;
+	}
+
+	public static int getDirection(int move) {
+		return (move >>> 8) & 1;
+	}
+
+	/**
+	 * Writes a move in the same syntax the human types: b/p bd, where
+	 * b=block p=position d=direction (L or R).
+	 *
+	 * @param move the packed move.
+	 * @return the move in user input format.
+	 */
+	public static String toString(int move) {
+		if (move == NONE) {
+			return "none";
+		}
+		int row = getRow(move);
+		int col = getCol(move);
+		int block = (row / 3) * 2 + (col / 3) + 1;
+		int position = (row % 3) * 3 + (col % 3) + 1;
+		char dir = getDirection(move) == 0 ? 'L' : 'R';
+		return block + "/" + position + " " + (getQuadrant(move) + 1) + dir;
+	}
+	
+	/**
+	 * Writes a move as one token without spaces, b/p-bd, for
+	 * EngineProtocol.
+	 *
+	 * @param move the packed move.
+	 * @return the move as a token, "none" for NONE.
+	 */
+	public static String toToken(int move) {
+		return move == NONE ? "none" : toString(move).replace(' ', '-');
+	}
+	
+	/**
+	 * Reads a move written by toToken, or by toString with its space.
+	 *
+	 * @param token the move as b/p-bd.
+	 * @return the packed move, NONE if the token is not a move.
+	 */
+	public static int parse(String token) {
+		String move = token.trim().toUpperCase();
+		if (move.length() != 6 || move.charAt(1) != '/'
+				|| (move.charAt(3) != '-' && move.charAt(3) != ' ')) {
+			return NONE;
+		}
+		int block = move.charAt(0) - '0';
+		int position = move.charAt(2) - '0';
+		int rotated = move.charAt(4) - '0';
+		char dir = move.charAt(5);
+		if (block < 1 || block > 4 || position < 1 || position > 9
+				|| rotated < 1 || rotated > 4 || (dir != 'L' && dir != 'R')) {
+			return NONE;
+		}
+		int row = (block - 1) / 2 * 3 + (position - 1) / 3;
+		int col = (block - 1) % 2 * 3 + (position - 1) % 3;
+		return encode(row, col, rotated - 1, dir == 'L' ? 0 : 1);
+	}
+}
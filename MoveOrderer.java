@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/**
+ * This class sorts the moves of a node so the ones most likely to be
+ * best are searched first, which lets alpha-beta prune more:
+ *   1. the move stored in the transposition table for the position.
+ *   2. the two killer moves of the ply: moves that caused a cutoff in
+ *      a sibling position.
+ *   3. the rest by their history score: how often, and how deep, a
+ *      move caused a cutoff anywhere in the search.
+ * Moves that tie keep the order of the move generator.
+ */
+public class MoveOrderer {
+	private static final int HASH_MOVE_SCORE = Integer.MAX_VALUE;
+	private static final int KILLER_SCORE = Integer.MAX_VALUE - 2;
+	private static final int HISTORY_LIMIT = 1 << 24;	//history is halved when a score gets this big.
+
+	private final int[][] killers = new int[Computer.MAX_PLY][2];
+	private final int[][] history = new int[2][Move.LIMIT];
+	private final int[] scores = new int[GameBoard.MAX_MOVES];
+
+	public MoveOrderer() {
+		clear();
+	}
+
+	/**
+	 * Forgets all killer moves and history.
+	 */
+	public void clear() {
+		for (int[] killer : killers) {
+			killer[0] = Move.NONE;
+			killer[1] = Move.NONE;
+		}
+		for (int[] colorHistory : history) {
+			Arrays.fill(colorHistory, 0);
+		}
+	}
+
+	/**
+	 * Halves the history and forgets the killers, so what was learned
+	 * in earlier searches still counts, but less than the new search.
+	 */
+	public void age() {
+		for (int[] killer : killers) {
+			killer[0] = Move.NONE;
+			killer[1] = Move.NONE;
+		}
+		for (int[] colorHistory : history) {
+			for (int i = 0; i < colorHistory.length; i++) {
+				colorHistory[i] >>= 1;
+			}
+		}
+	}
+
+	/**
+	 * Sorts the moves of a node best first.
+	 *
+	 * @param moves the packed moves, sorted in place.
+	 * @param numMoves the number of moves.
+	 * @param ply how many moves deep the node is from the root.
+	 * @param color the bitboard index of the color to move.
+	 * @param hashMove the move from the transposition table, Move.NONE if there is none.
+	 */
+	public void order(int[] moves, int numMoves, int ply, int color, int hashMove) {
+		int[] colorHistory = history[color];
+		int killer1 = killers[ply][0];
+		int killer2 = killers[ply][1];
+		for (int i = 0; i < numMoves; i++) {
+			int move = moves[i];
+			int score;
+			if (move == hashMove) {
+				score = HASH_MOVE_SCORE;
+			} else if (move == killer1) {
+				score = KILLER_SCORE;
+			} else if (move == killer2) {
+				score = KILLER_SCORE - 1;
+			} else {
+				score = colorHistory[move];
+			}
+			//insertion sort, which keeps ties in generator order.
+			int j = i;
+			while (j > 0 && scores[j - 1] < score) {
+				scores[j] = scores[j - 1];
+				moves[j] = moves[j - 1];
+				j--;
+			}
+			scores[j] = score;
+			moves[j] = move;
+		}
+	}
+
+	/**
+	 * Remembers a move that caused a cutoff.
+	 *
+	 * @param move the packed move.
+	 * @param ply how many moves deep the node is from the root.
+	 * @param color the bitboard index of the color that moved.
+	 * @param depth the remaining depth of the node.
+	 */
+	public void recordCutoff(int move, int ply, int color, int depth) {
+		if (killers[ply][0] != move) {
+			killers[ply][1] = killers[ply][0];
+			killers[ply][0] = move;
+		}
+		int[] colorHistory = history[color];
+		colorHistory[move] += depth * depth;
+		if (colorHistory[move] > HISTORY_LIMIT) {
+			for (int i = 0; i < colorHistory.length; i++) {
+				colorHistory[i] >>= 1;
+			}
+		}
+	}
+
+	public int getHistory(int color, int move) {
+		return history[color][move];
+	}
+}
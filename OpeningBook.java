@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class looks up the moves of the opening book written by
+ * OpeningBookBuilder. The file is memory-mapped and searched in place,
+ * so nothing is read onto the heap and a lookup costs a binary search.
+ *
+ * The file starts with a header of four ints: MAGIC, the number of
+ * entries, the most stones of a position in the book and the depth it
+ * was searched to. Then come the entries, sorted by key, RECORD_BYTES
+ * each:
+ *
+ *   long  key:   canonical key of the position (see Symmetry.canonical)
+ *                shifted left by 2, with the color to move in bit 1 and
+ *                the color of player 1 in bit 0.
+ *   short move:  the best move on the canonical image of the position.
+ *   short depth: the depth the move was searched to.
+ *   int   score: the score of the move from the point of view of the
+ *                player to move.
+ *
+ * Mirror images of a position share one entry, and the move is turned
+ * back onto the board that is looked up. The heuristic does not score
+ * the alpha and the beta player alike, so a position is searched and
+ * kept once for each role of the player to move, like in the analysis
+ * cache.
+ */
+public class OpeningBook {
+	public static final int MAGIC = 0x50424B32;		//"PBK2", books keyed without the roles are not read.
+	public static final int HEADER_BYTES = 16;
+	public static final int RECORD_BYTES = 16;
+
+	private final ByteBuffer buffer;
+	private final int size;				//number of entries.
+	private final int maxStones;		//positions with more stones are not in the book.
+	private final int depth;			//depth the book was searched to.
+
+	private OpeningBook(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException("not an opening book");
+		}
+		size = buffer.getInt(4);
+		maxStones = buffer.getInt(8);
+		depth = buffer.getInt(12);
+		if ((long) size * RECORD_BYTES + HEADER_BYTES != buffer.capacity()) {
+			throw new IOException("opening book has the wrong length");
+		}
+	}
+
+	/**
+	 * Maps a book file into memory. The file is not read until it is
+	 * looked up, and the mapping stays valid after the file is closed.
+	 *
+	 * @param fileName the name of the book file.
+	 * @return the book.
+	 * @throws IOException if the file can not be read or is not a book.
+	 */
+	public static OpeningBook open(String fileName) throws IOException {
+		Path path = Paths.get(fileName);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getMaxStones() {
+		return maxStones;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * The key of a position in the book.
+	 *
+	 * @param canonical the canonical key and transform of the position.
+	 * @param color the bitboard index of the color to move.
+	 * @param player1 the bitboard index of player 1's color.
+	 * @return the key.
+	 */
+	public static long key(long canonical, int color, int player1) {
+		return Symmetry.getKey(canonical) << 2 | color << 1 | player1;
+	}
+
+	/**
+	 * Looks up the book move of a position.
+	 *
+	 * @param gameBoard the gameboard, which is not changed.
+	 * @param alphaPlayer whether the player to move is the alpha player.
+	 * @return the move, its score from the max (alpha) player's point of
+	 * view and the depth it was searched to, or null if the position is
+	 * not in the book.
+	 */
+	public SearchResult probe(GameBoard gameBoard, boolean alphaPlayer) {
+		long empty = gameBoard.getEmptyBits();
+		if (GameBoard.CELLS - Long.bitCount(empty) > maxStones) {
+			return null;
+		}
+		int color = GameBoard.colorIndex(alphaPlayer ? gameBoard.player1color : gameBoard.player2color);
+		long canonical = Symmetry.canonical(gameBoard);
+		long key = key(canonical, color, GameBoard.colorIndex(gameBoard.player1color));
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int offset = HEADER_BYTES + mid * RECORD_BYTES;
+			long midKey = buffer.getLong(offset);
+			if (midKey < key) {
+				low = mid + 1;
+			} else if (midKey > key) {
+				high = mid - 1;
+			} else {
+				int move = Symmetry.transformMove(buffer.getShort(offset + 8),
+						Symmetry.inverse(Symmetry.getTransform(canonical)));
+				if ((empty & (1L << Move.getCell(move))) == 0) {
+					return null;		//not a book for this board.
+				}
+				int score = buffer.getInt(offset + 12);
+				SearchResult result = new SearchResult();
+				result.setBestMove(move);
+				result.setDepth(buffer.getShort(offset + 10));
+				result.setScore(alphaPlayer ? score : -score);
+				return result;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "Opening book: " + size + " entries of up to " + maxStones + " stones, depth " + depth;
+	}
+}
@@ -0,0 +1,196 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class builds the opening book offline: it searches every
+ * position with up to a given number of stones, with either color to
+ * move, and writes the best moves to a file OpeningBook can map. Mirror
+ * images are searched once, but each position is searched twice, with
+ * the player to move as player 1 (alpha) and as player 2, since the
+ * computer can have either role. Run it with the file name, the most stones,
+ * the depth and the time per position in milliseconds, for example:
+ *
+ *   java OpeningBookBuilder book.dat 2 5 20000
+ *
+ * Either player can start, and the first computer move may be placed
+ * without a rotation (see Pentago.playRandomMove), so positions are
+ * found by playing every move from the empty board with each color
+ * first. Once the book is written every entry is looked up again, to
+ * check it and time the lookups.
+ */
+public class OpeningBookBuilder {
+	public static final int DEFAULT_MAX_STONES = 2;
+	public static final int DEFAULT_DEPTH = 5;
+	public static final long DEFAULT_TIME_MS = 20000;
+	public static final int TABLE_SIZE_MB = 256;
+	private static final int VERIFY_ROUNDS = 20;
+
+	/**
+	 * Main method that builds the book named in the arguments.
+	 *
+	 * @param args file name, most stones, depth and time per position.
+	 * @throws IOException if the book can not be written.
+	 */
+	public static void main(String args[]) throws IOException {
+		String fileName = args.length > 0 ? args[0] : "book.dat";
+		int maxStones = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_STONES;
+		int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+		long timeMillis = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_TIME_MS;
+		List<GameBoard> positions = positions(maxStones);
+		System.out.println(positions.size() + " positions of up to " + maxStones + " stones");
+		TreeMap<Long, long[]> entries = search(positions, depth, timeMillis);
+		write(fileName, entries, maxStones, depth);
+		verify(fileName, positions);
+	}
+
+	/**
+	 * Finds the positions with up to maxStones stones, one of each set
+	 * of mirror images and each color to move. In each of them the
+	 * color to move is player 1.
+	 *
+	 * @param maxStones most stones on the board.
+	 * @return the positions.
+	 */
+	public static List<GameBoard> positions(int maxStones) {
+		List<GameBoard> positions = new ArrayList<GameBoard>();
+		Map<Long, GameBoard> level = new LinkedHashMap<Long, GameBoard>();
+		for (int color = GameBoard.BLACK; color <= GameBoard.WHITE; color++) {
+			GameBoard gameBoard = new GameBoard();
+			setPlayer1(gameBoard, color);
+			level.put(OpeningBook.key(Symmetry.canonical(gameBoard), color, color), gameBoard);
+		}
+		int[] moves = new int[GameBoard.MAX_MOVES];
+		for (int stones = 0; stones <= maxStones; stones++) {
+			positions.addAll(level.values());
+			if (stones == maxStones) {
+				break;
+			}
+			Map<Long, GameBoard> next = new LinkedHashMap<Long, GameBoard>();
+			for (GameBoard gameBoard : level.values()) {
+				int color = GameBoard.colorIndex(gameBoard.player1color);
+				int numMoves = gameBoard.generateMoves(moves, color);
+				for (int i = 0; i < numMoves; i++) {
+					GameBoard child = new GameBoard(gameBoard);
+					child.makeMove(moves[i], color);
+					setPlayer1(child, 1 - color);
+					long key = OpeningBook.key(Symmetry.canonical(child), 1 - color, 1 - color);
+					if (!child.isGameOver() && !next.containsKey(key)) {
+						next.put(key, child);
+					}
+				}
+			}
+			level = next;
+		}
+		return positions;
+	}
+
+	/**
+	 * Makes a color player 1, the alpha player.
+	 */
+	private static void setPlayer1(GameBoard gameBoard, int color) {
+		gameBoard.setPlayer1color(color == GameBoard.BLACK ? 'B' : 'W');
+		gameBoard.setPlayer2color(color == GameBoard.BLACK ? 'W' : 'B');
+	}
+
+	/**
+	 * Searches every position with iterative deepening PVS, once with
+	 * the player to move as player 1 and once as player 2.
+	 *
+	 * @return book key -> {canonical move, depth, score for the player
+	 * to move}, sorted by key.
+	 */
+	private static TreeMap<Long, long[]> search(List<GameBoard> positions, int depth, long timeMillis) {
+		TreeMap<Long, long[]> entries = new TreeMap<Long, long[]>();
+		TranspositionTable table = new TranspositionTable((long) TABLE_SIZE_MB << 20);
+		long start = System.nanoTime();
+		for (GameBoard position : positions) {
+			int color = GameBoard.colorIndex(position.player1color);
+			long canonical = Symmetry.canonical(position);
+			for (int player1 = GameBoard.BLACK; player1 <= GameBoard.WHITE; player1++) {
+				boolean alphaPlayer = player1 == color;
+				GameBoard gameBoard = new GameBoard(position);
+				setPlayer1(gameBoard, player1);
+				Computer computer = new Computer(table);
+				computer.setAlgorithm(Computer.PVS);
+				computer.setMoveOrdering(true);
+				computer.setThreatCheck(true);
+				computer.setQuiescence(Pentago.QUIESCENCE_PLY);
+				computer.setThreads(Runtime.getRuntime().availableProcessors());
+				SearchResult result = computer.iterativeDeepening(gameBoard, alphaPlayer,
+						new SearchLimits(depth, timeMillis, 0));
+				int move = Symmetry.transformMove(result.getBestMove(), Symmetry.getTransform(canonical));
+				int score = alphaPlayer ? result.getScore() : -result.getScore();
+				entries.put(OpeningBook.key(canonical, color, player1),
+						new long[] {move, result.getDepth(), score});
+			}
+			if (entries.size() % 100 == 0) {
+				System.out.println(entries.size() + " positions searched in "
+						+ (System.nanoTime() - start) / 1000000000 + " s");
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Writes the book in the format described in OpeningBook.
+	 */
+	private static void write(String fileName, TreeMap<Long, long[]> entries, int maxStones, int depth)
+			throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+			out.writeInt(OpeningBook.MAGIC);
+			out.writeInt(entries.size());
+			out.writeInt(maxStones);
+			out.writeInt(depth);
+			for (Map.Entry<Long, long[]> entry : entries.entrySet()) {
+				long[] value = entry.getValue();
+				out.writeLong(entry.getKey());
+				out.writeShort((int) value[0]);
+				out.writeShort((int) value[1]);
+				out.writeInt((int) value[2]);
+			}
+		}
+		System.out.println("wrote " + entries.size() + " entries to " + fileName);
+	}
+
+	/**
+	 * Looks up every position in the written book in both roles, checks
+	 * that a legal move comes back and prints how long the lookups took.
+	 */
+	private static void verify(String fileName, List<GameBoard> positions) throws IOException {
+		OpeningBook book = OpeningBook.open(fileName);
+		//the positions again with the player to move as player 2.
+		List<GameBoard> swapped = new ArrayList<GameBoard>();
+		for (GameBoard position : positions) {
+			GameBoard gameBoard = new GameBoard(position);
+			setPlayer1(gameBoard, 1 - GameBoard.colorIndex(position.player1color));
+			swapped.add(gameBoard);
+		}
+		int missing = 0;
+		long nanos = 0;
+		//the first rounds warm up the JIT and the mapped pages.
+		for (int round = 0; round < VERIFY_ROUNDS; round++) {
+			missing = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < positions.size(); i++) {
+				SearchResult alpha = book.probe(positions.get(i), true);
+				SearchResult beta = book.probe(swapped.get(i), false);
+				if (alpha == null || alpha.getBestMove() == Move.NONE) {
+					missing++;
+				}
+				if (beta == null || beta.getBestMove() == Move.NONE) {
+					missing++;
+				}
+			}
+			nanos = System.nanoTime() - start;
+		}
+		System.out.printf("%s, %d missing, %.2f us per lookup%n", book, missing,
+				nanos / 1000.0 / (2 * positions.size()));
+	}
+}
@@ -0,0 +1,283 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class is a parallel alpha-beta search on a ForkJoinPool using
+ * Young Brothers Wait: the eldest child of a node is searched first,
+ * on its own, to get a bound, and only then are its younger brothers
+ * searched in parallel as fork-join tasks. When one of them fails
+ * high, the others are cancelled: every task checks the cutoff flags
+ * of its own node and of the nodes above it.
+ *
+ * GameBoard is changed in place by the search, so every task works on
+ * its own copy. There is no transposition table and moves are searched
+ * in generator order, so the result does not depend on how the threads
+ * are scheduled: the score and the move are the ones the serial
+ * Computer.alphaBetaPrun finds.
+ */
+public class ParallelSearch {
+	//nodes with less depth left than this are searched by one thread.
+	public static final int SPLIT_DEPTH = 3;
+
+	private final ForkJoinPool pool;
+	private final LongAdder nodes = new LongAdder();
+	private int player1;			//bitboard index of player 1's color.
+	private int player2;			//bitboard index of player 2's color.
+
+	/**
+	 * @param parallelism number of threads that search.
+	 */
+	public ParallelSearch(int parallelism) {
+		pool = new ForkJoinPool(Math.max(1, parallelism));
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Searches the gameboard to a fixed depth.
+	 *
+	 * @param depth number of moves that the computer can foresee.
+	 * @param gameBoard the gameboard, which is not changed.
+	 * @param alphaPlayer whether the AI is an alpha player.
+	 * @return the score from the max (alpha) player's point of view and
+	 * the intelligent move.
+	 */
+	public SearchResult search(int depth, GameBoard gameBoard, boolean alphaPlayer) {
+		long start = System.nanoTime();
+		nodes.reset();
+		player1 = GameBoard.colorIndex(gameBoard.player1color);
+		player2 = GameBoard.colorIndex(gameBoard.player2color);
+		RootTask root = new RootTask(new GameBoard(gameBoard), depth, alphaPlayer);
+		int score = pool.invoke(root);
+		SearchResult result = new SearchResult();
+		result.setScore(alphaPlayer ? score : -score);
+		result.setBestMove(root.bestMove);
+		result.setDepth(depth);
+		result.setNodes(nodes.sum());
+		result.setTimeMillis((System.nanoTime() - start) / 1000000);
+		return result;
+	}
+
+	/**
+	 * Shuts the thread pool down.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * The younger brothers of one node that are being searched in
+	 * parallel. They share the alpha of the node, which rises as they
+	 * finish, and a flag that is set when one of them fails high.
+	 */
+	private static final class Split {
+		private final Split parent;		//the split the node itself is searched in.
+		private volatile int alpha;
+		private volatile boolean cutoff;
+
+		Split(Split parent, int alpha) {
+			this.parent = parent;
+			this.alpha = alpha;
+		}
+
+		synchronized void raiseAlpha(int score) {
+			if (score > alpha) {
+				alpha = score;
+			}
+		}
+	}
+
+	/**
+	 * Whether a node searched in the split has to stop because a node
+	 * it is below failed high.
+	 */
+	private static boolean isCutOff(Split split) {
+		for (Split s = split; s != null; s = s.parent) {
+			if (s.cutoff) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Searches a node. Scores are from the point of view of the player
+	 * to move. The result is only used when the split the node is in has
+	 * not been cancelled.
+	 *
+	 * @param gameBoard the gameboard, only used by this thread.
+	 * @param split the split the node is searched in, null at the root.
+	 * @param buffers move buffers, one per ply left.
+	 * @return the score of the node, beta if it failed high.
+	 */
+	private int search(GameBoard gameBoard, int depth, boolean alphaPlayer, int alpha, int beta,
+			Split split, int[][] buffers) {
+		nodes.increment();
+		int result = gameBoard.getResult();
+		if (result != GameBoard.IN_PROGRESS) {
+			int score = Computer.terminalScore(gameBoard, result, depth);
+			return alphaPlayer ? score : -score;
+		}
+		if (depth == 0) {
+			int score = gameBoard.getHeuristicValue(alphaPlayer);
+			return alphaPlayer ? score : -score;
+		}
+		if (isCutOff(split)) {
+			return 0;
+		}
+		int[] moves = buffers[depth - 1];
+		int color = alphaPlayer ? player1 : player2;
+		int numMoves = gameBoard.generateMoves(moves, color);
+
+		//the eldest brother, or every move when the node is too shallow to split.
+		int best = -Computer.INFINITY;
+		int serialMoves = depth < SPLIT_DEPTH ? numMoves : 1;
+		for (int i = 0; i < serialMoves; i++) {
+			gameBoard.makeMove(moves[i], color);
+			int score = -search(gameBoard, depth - 1, !alphaPlayer, -beta, -alpha, split, buffers);
+			gameBoard.unmakeMove(moves[i], color);
+			if (isCutOff(split)) {
+				return 0;
+			}
+			if (score >= beta) {
+				return beta;
+			}
+			if (score > best) {
+				best = score;
+				alpha = Math.max(alpha, score);
+			}
+		}
+		if (serialMoves == numMoves) {
+			return best;
+		}
+
+		//the younger brothers in parallel.
+		Split younger = new Split(split, alpha);
+		List<NodeTask> tasks = new ArrayList<NodeTask>(numMoves - 1);
+		for (int i = 1; i < numMoves; i++) {
+			tasks.add(new NodeTask(gameBoard, moves[i], color, depth, alphaPlayer, beta, younger, false));
+		}
+		ForkJoinTask.invokeAll(tasks);
+		if (isCutOff(split)) {
+			return 0;
+		}
+		if (younger.cutoff) {
+			return beta;
+		}
+		for (NodeTask task : tasks) {
+			best = Math.max(best, task.getRawResult());
+		}
+		return best;
+	}
+
+	/**
+	 * Searches one younger brother on its own copy of the gameboard.
+	 * The window is read when the task starts, so it uses the highest
+	 * alpha its brothers have found by then.
+	 */
+	private final class NodeTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+		private final GameBoard parentBoard;
+		private final int move;
+		private final int color;
+		private final int depth;			//depth left at the parent.
+		private final boolean alphaPlayer;	//whether alpha moves at the parent.
+		private final int beta;
+		private final Split split;
+		private final boolean root;
+
+		NodeTask(GameBoard parentBoard, int move, int color, int depth, boolean alphaPlayer, int beta,
+				Split split, boolean root) {
+			this.parentBoard = parentBoard;
+			this.move = move;
+			this.color = color;
+			this.depth = depth;
+			this.alphaPlayer = alphaPlayer;
+			this.beta = beta;
+			this.split = split;
+			this.root = root;
+		}
+
+		@Override
+		protected Integer compute() {
+			if (isCutOff(split)) {
+				return 0;
+			}
+			//at the root a tie with the best move has to be exact too, to pick the first of them.
+			int alpha = root ? split.alpha - 1 : split.alpha;
+			GameBoard gameBoard = new GameBoard(parentBoard);
+			gameBoard.makeMove(move, color);
+			int score = -search(gameBoard, depth - 1, !alphaPlayer, -beta, -alpha, split,
+					new int[depth][GameBoard.MAX_MOVES]);
+			if (score >= beta) {
+				split.cutoff = true;
+			} else if (score > alpha) {
+				split.raiseAlpha(score);
+			}
+			return score;
+		}
+	}
+
+	/**
+	 * Searches the root. The root moves are the ones alphaBetaPrun
+	 * searches, with moves that mirror an earlier one removed, and the
+	 * best move is the first of them with the best score, as in
+	 * alphaBetaPrun.
+	 */
+	private final class RootTask extends RecursiveTask<Integer> {
+		private static final long serialVersionUID = 1L;
+		private final GameBoard gameBoard;
+		private final int depth;
+		private final boolean alphaPlayer;
+		private int bestMove = Move.NONE;
+
+		RootTask(GameBoard gameBoard, int depth, boolean alphaPlayer) {
+			this.gameBoard = gameBoard;
+			this.depth = depth;
+			this.alphaPlayer = alphaPlayer;
+		}
+
+		@Override
+		protected Integer compute() {
+			int result = gameBoard.getResult();
+			if (result != GameBoard.IN_PROGRESS || depth == 0) {
+				return search(gameBoard, depth, alphaPlayer, -Computer.INFINITY, Computer.INFINITY,
+						null, new int[Math.max(depth, 1)][GameBoard.MAX_MOVES]);
+			}
+			nodes.increment();
+			int[] moves = new int[GameBoard.MAX_MOVES];
+			int color = alphaPlayer ? player1 : player2;
+			int numMoves = gameBoard.generateMoves(moves, color);
+			numMoves = Symmetry.removeSymmetricMoves(gameBoard, moves, numMoves, color,
+					new long[GameBoard.MAX_MOVES]);
+
+			gameBoard.makeMove(moves[0], color);
+			int best = -search(gameBoard, depth - 1, !alphaPlayer, -Computer.INFINITY, Computer.INFINITY,
+					null, new int[depth][GameBoard.MAX_MOVES]);
+			gameBoard.unmakeMove(moves[0], color);
+			bestMove = moves[0];
+
+			Split younger = new Split(null, best);
+			List<NodeTask> tasks = new ArrayList<NodeTask>(numMoves - 1);
+			for (int i = 1; i < numMoves; i++) {
+				tasks.add(new NodeTask(gameBoard, moves[i], color, depth, alphaPlayer, Computer.INFINITY,
+						younger, true));
+			}
+			ForkJoinTask.invokeAll(tasks);
+			for (int i = 0; i < tasks.size(); i++) {
+				int score = tasks.get(i).getRawResult();
+				if (score > best) {
+					best = score;
+					bestMove = moves[i + 1];
+				}
+			}
+			return best;
+		}
+	}
+}
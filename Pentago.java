@@ -1,4 +1,6 @@
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.Random;
 import java.util.Scanner;
 
@@ -6,20 +8,44 @@ import java.util.Scanner;
  * @author Tony
  * 
  * This is the driver class for the Pentago game. The constants here
- * can be toggled to determine depth, AI algorithm of choice (alpha-beta vs.
- * min-max). Debug mode can be toggled. 
+ * can be toggled to determine depth, AI algorithm of choice (principal
+ * variation search, alpha-beta or min-max). Debug mode can be toggled. 
  */
 public class Pentago {
 	public static final int DEPTH = 3;				//how many moves the AI can foresee.
+	public static final long TIME_PER_MOVE_MS = 10000;	//time budget per computer move, 0 for no limit.
 	public static final boolean DEBUG = false;
 	public static final boolean MANUAL_FIRST_MOVE = false; //human always first
 	public static final int AI_FIRSTMOVE_ROW = 0; 	//used if moves are set to random
 	public static final int AI_FIRSTMOVE_COL = 0; 	//used if moves are set to random
 	
-	//alpha beta pruning. true will enable alpha beta pruning algorithm. false enables min max algorithm
-	public static final boolean AB_PRUNE = true; 
+	//search algorithm: Computer.PVS, Computer.ALPHA_BETA, Computer.PARALLEL_ALPHA_BETA, Computer.MCTS
+	//or Computer.MINMAX.
+	public static final int ALGORITHM = Computer.PVS;
+	public static final int TABLE_SIZE_MB = 64;		//memory for remembering searched positions.
+	public static final boolean MOVE_ORDERING = true;	//search the most promising moves first.
+	public static final boolean THREAT_CHECK = true;	//play immediate wins and forced blocks without searching.
+	public static final int QUIESCENCE_PLY = 2;		//forced moves searched past DEPTH, 0 for none.
+	public static final boolean LATE_MOVE_REDUCTIONS = false;	//PVS searches late moves less deep.
+	public static final boolean FUTILITY_PRUNING = false;	//PVS skips hopeless quiet moves near the leaves.
+	public static final int ENDGAME_EMPTY_CELLS = 14;	//solve the game exactly from this many empty cells.
+	public static final long ENDGAME_NODE_LIMIT = 2000000;	//most nodes of a solve before searching instead.
+	public static final int THREADS = Runtime.getRuntime().availableProcessors();	//threads searching each move.
+	public static final String OPENING_BOOK = "book.dat";	//book file built by OpeningBookBuilder, used if it exists.
+	//file of searched positions kept between runs, off unless set with -Dpentago.analysisCache=analysis.dat.
+	public static final String ANALYSIS_CACHE = System.getProperty("pentago.analysisCache");
+	public static final int ANALYSIS_CACHE_MB = 64;	//size of the analysis cache file.
+	public static final String RETROGRADE_TABLES = "tables";	//directory of RetrogradeSolver slices, used if it exists.
+	public static final boolean PONDER = true;		//search while the human thinks (PVS or alpha beta with a time budget).
 	
 	public static GameBoard myGameBoard;			//the current gameboard state.
+	public static TranspositionTable myTable;		//searched positions, kept between moves.
+	public static EndgameSolver mySolver;			//solved endgame positions, kept between moves.
+	public static OpeningBook myBook;				//opening moves, null if there is no book.
+	public static AnalysisCache myCache;			//searched positions on disk, null if not used.
+	public static RetrogradeTables myRetrograde;	//exact values from RetrogradeSolver, null if there are none.
+	public static Ponderer myPonderer;				//searches during the human's turn, null if not used.
+	public static EngineSession mySession;			//the computer, kept warm from one move to the next.
 	public static String myPlayerName;				//name of the human.
 	public static boolean isGameOver;				
 	public static char currentPlayer;				//the color of the current player.
@@ -33,11 +59,44 @@ public class Pentago {
 	 */
 	public static void main (String args[]) throws FileNotFoundException {
 		myGameBoard = new GameBoard();
+		openTables();
+		mySession = new EngineSession(newComputer());
+		if (PONDER && (ALGORITHM == Computer.PVS || ALGORITHM == Computer.ALPHA_BETA) && TIME_PER_MOVE_MS > 0) {
+			myPonderer = new Ponderer(Pentago::newComputer);
+		}
 		Scanner myScanner = new Scanner(System.in);
 		intro(myScanner);
 		startGame(myScanner);
 	}
 	
+	/**
+	 * Makes the transposition table and the endgame solver, and opens
+	 * the opening book, the retrograde tables and the analysis cache
+	 * when they are there. EngineProtocol uses it too.
+	 */
+	public static void openTables() {
+		myTable = new TranspositionTable((long) TABLE_SIZE_MB << 20);
+		mySolver = new EndgameSolver();
+		mySolver.setNodeLimit(ENDGAME_NODE_LIMIT);
+		if (new File(OPENING_BOOK).exists()) {
+			try {
+				myBook = OpeningBook.open(OPENING_BOOK);
+			} catch (IOException e) {
+				System.out.println("Could not open the opening book: " + e.getMessage());
+			}
+		}
+		if (new File(RETROGRADE_TABLES).isDirectory()) {
+			myRetrograde = new RetrogradeTables(new File(RETROGRADE_TABLES));
+		}
+		if (ANALYSIS_CACHE != null) {
+			try {
+				myCache = AnalysisCache.open(ANALYSIS_CACHE, (long) ANALYSIS_CACHE_MB << 20);
+			} catch (IOException e) {
+				System.out.println("Could not open the analysis cache: " + e.getMessage());
+			}
+		}
+	}
+	
 	public static void intro(Scanner myScanner) {
 		char color = '\u0000';
 		System.out.println("Welcome to Pentago!");
@@ -105,6 +164,10 @@ public class Pentago {
 			System.out.println("Player 2 will move first.");
 			isPlayer1First = false;
 		}
+		char player1color = myGameBoard.getPlayer1color();
+		char player2color = myGameBoard.getPlayer2color();
+		mySession.newGame(player1color, player2color, isPlayer1First ? player1color : player2color);
+		myGameBoard = mySession.getBoard();
 		playGame(myScanner, isPlayer1First);
 		myScanner.close();
 	}
@@ -145,9 +208,10 @@ public class Pentago {
 				myGameBoard.displayGameBoard();
 				player1First = false;
 				isGameOver = myGameBoard.isGameOver();
-				if (isGameOver) {
-					System.out.println("Player 1 wins");
+				if (isGameOver && myPonderer != null) {
+					myPonderer.cancel();
 				}
+				announceResult();
 			} else if (turnCount == 0) { 
 				currentPlayer = myGameBoard.getPlayer2color();
 				playRandomMove();
@@ -157,42 +221,124 @@ public class Pentago {
 				playComputerMove();
 				player1First = true;
 				isGameOver = myGameBoard.isGameOver();
-				if (isGameOver) {
-					System.out.println("Player 2 wins");
-				}
+				announceResult();
 			}
 			turnCount++;
 		}
 	}
 	
+	/**
+	 * Prints the outcome once the game is over. A rotation can
+	 * complete a 5 in a row for the other player, or for both players
+	 * at once, so the winner is read off the board rather than assumed
+	 * to be whoever moved last.
+	 */
+	public static void announceResult() {
+		int result = myGameBoard.getResult();
+		if (result == GameBoard.DRAW) {
+			System.out.println("It's a draw");
+		} else if (result != GameBoard.IN_PROGRESS) {
+			char winner = (result == GameBoard.BLACK_WINS) ? 'B' : 'W';
+			if (winner == myGameBoard.getPlayer1color()) {
+				System.out.println("Player 1 wins");
+			} else {
+				System.out.println("Player 2 wins");
+			}
+		}
+	}
+	
+	/**
+	 * Makes a computer set up with the constants above. It shares the
+	 * transposition table, the endgame solver and the other tables that
+	 * are kept between moves.
+	 * 
+	 * @return the computer.
+	 */
+	public static Computer newComputer() {
+		Computer computer = new Computer(myTable);
+		computer.setMoveOrdering(MOVE_ORDERING);
+		computer.setAlgorithm(ALGORITHM);
+		computer.setThreads(THREADS);
+		computer.setThreatCheck(THREAT_CHECK);
+		computer.setQuiescence(QUIESCENCE_PLY);
+		computer.setLateMoveReductions(LATE_MOVE_REDUCTIONS);
+		computer.setFutilityPruning(FUTILITY_PRUNING);
+		computer.setEndgameSolver(mySolver, ENDGAME_EMPTY_CELLS);
+		computer.setOpeningBook(myBook);
+		computer.setAnalysisCache(myCache);
+		computer.setRetrogradeTables(myRetrograde);
+		return computer;
+	}
+	
 	/**
 	 * This method handles the computer's method calls to determine
-	 * which will be the best move to make next.  
+	 * which will be the best move to make next. A search done while
+	 * the human was thinking is used when it guessed their move.
 	 */
 	public static void playComputerMove() {
-		int[] bestAImove = null;
-		int num;
-		Computer computer = new Computer();
-		if (AB_PRUNE) {
+		SearchResult bestAImove;
+		long num;
+		Computer computer = mySession.getComputer();
+		SearchResult pondered = myPonderer == null ? null : myPonderer.finish(myGameBoard, TIME_PER_MOVE_MS);
+		if (pondered != null) {
+			bestAImove = pondered;
+			num = pondered.getNodes();
+		} else if ((ALGORITHM == Computer.PVS || ALGORITHM == Computer.ALPHA_BETA) && TIME_PER_MOVE_MS > 0) {
+			bestAImove = mySession.search(new SearchLimits(DEPTH, TIME_PER_MOVE_MS, 0));
+			num = bestAImove.getNodes();
+		} else if (ALGORITHM == Computer.PVS) {
+			bestAImove = computer.principalVariationSearch(DEPTH, myGameBoard, false);
+			num = computer.nodesExpanded;
+		} else if (ALGORITHM == Computer.ALPHA_BETA) {
 			bestAImove = computer.alphaBetaPrun(DEPTH, myGameBoard, false, Integer.MIN_VALUE, Integer.MAX_VALUE);
 			num = computer.nodesExpanded;
+		} else if (ALGORITHM == Computer.PARALLEL_ALPHA_BETA) {
+			bestAImove = mySession.search(new SearchLimits(DEPTH));
+			num = bestAImove.getNodes();
+		} else if (ALGORITHM == Computer.MCTS) {
+			bestAImove = mySession.search(new SearchLimits(DEPTH, TIME_PER_MOVE_MS, 0));
+			num = bestAImove.getNodes();
 		} else {
 			bestAImove = computer.minMax(DEPTH, myGameBoard, false);
 			num = computer.nodesExpanded;
 		}
-		int[] move = myGameBoard.reverseTranslate(bestAImove[1], bestAImove[2]);
-		char dir;
-		if (bestAImove[4] == 0) {
-			dir = 'L';
-		} else {
-			dir = 'R';
+		int move = bestAImove.getBestMove();
+		System.out.println("Player 2 plays " + Move.toString(move) + " with a heuristic value of: " + bestAImove.getScore());
+		if (DEBUG) {
+			System.out.println("nodes expanded = " + num + " depth = " + bestAImove.getDepth());
+			System.out.println("expected line: " + bestAImove.getPrincipalVariationString());
+			if (ALGORITHM == Computer.PVS || ALGORITHM == Computer.ALPHA_BETA) {
+				System.out.println(myTable);
+				if (myCache != null) {
+					System.out.println(myCache);
+				}
+				if (myPonderer != null) {
+					System.out.println(myPonderer);
+				}
+				System.out.println(mySession);
+			}
+		}
+		if (myCache != null) {
+			myCache.flush();
 		}
-		System.out.println("Player 2 plays " + move[0] + "/" + move[1] + " " + (bestAImove[3] + 1) + dir + " with a heuristic value of: " + bestAImove[0]);
-		myGameBoard.performMove(bestAImove[1], bestAImove[2], currentPlayer);
-		myGameBoard.rotateBoard(bestAImove[3], bestAImove[4]);
+		myGameBoard.makeMove(move, GameBoard.colorIndex(currentPlayer));
 		myGameBoard.displayGameBoard();
+		int[] line = bestAImove.getPrincipalVariation();
+		startPondering(line.length > 1 ? line[1] : Move.NONE);
 	}	
 	
+	/**
+	 * Starts searching the human's expected reply in the background,
+	 * unless pondering is off or the game is over.
+	 * 
+	 * @param expectedReply the reply, Move.NONE to let the ponderer guess.
+	 */
+	public static void startPondering(int expectedReply) {
+		if (myPonderer != null && !myGameBoard.isGameOver()) {
+			myPonderer.start(myGameBoard, expectedReply, new SearchLimits(DEPTH));
+		}
+	}
+	
 	/**
 	 * If random is enabled, then computer will just play a completely
 	 * unintelligent random move on the board.
@@ -205,5 +351,6 @@ public class Pentago {
 			myGameBoard.performMove(rand.nextInt(6), rand.nextInt(6), currentPlayer);
 		}
 		myGameBoard.displayGameBoard();
+		startPondering(Move.NONE);
 	}
 }
@@ -0,0 +1,147 @@
+import java.util.function.Supplier;
+
+/**
+ * This class searches while the human is thinking. After the computer
+ * moves, it guesses the human's reply, plays it on a copy of the board
+ * and searches the computer's answer on a background thread. The
+ * search shares the transposition table with the computer's own, so
+ * even a wrong guess leaves the table filled with positions the real
+ * search is likely to meet.
+ *
+ * When the human's move is in, finish() compares it with the guess. If
+ * it is the same (a ponder hit), the background search is given the
+ * time of a normal move to finish and its result is played. Otherwise
+ * the background search is stopped and the computer searches as usual.
+ */
+public class Ponderer {
+	public static final int PREDICT_DEPTH = 2;		//depth of the search that guesses the human's reply.
+
+	private final Supplier<Computer> computers;		//makes the computers that search.
+	private Thread thread;
+	private volatile Computer current;				//the computer searching now.
+	private volatile boolean cancelled;
+	private volatile GameBoard predicted;			//the board after the guessed reply.
+	private volatile SearchResult result;			//the background search's result.
+	private int hits;
+	private int misses;
+
+	/**
+	 * @param computers makes a computer set up like the one that plays.
+	 * It should share the transposition table.
+	 */
+	public Ponderer(Supplier<Computer> computers) {
+		this.computers = computers;
+	}
+
+	/**
+	 * Starts pondering. The human is player 1 (alpha) and is to move.
+	 *
+	 * @param gameBoard the gameboard, which is copied.
+	 * @param expectedReply the human's reply the computer expects, or
+	 * Move.NONE to guess it with a short search.
+	 * @param limits the budget of the computer's search after the reply.
+	 */
+	public void start(GameBoard gameBoard, int expectedReply, SearchLimits limits) {
+		cancel();
+		GameBoard copy = new GameBoard(gameBoard);
+		cancelled = false;
+		predicted = null;
+		result = null;
+		thread = new Thread(() -> ponder(copy, expectedReply, limits), "ponder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Runs on the background thread: guesses the reply, then searches
+	 * the position after it.
+	 */
+	private void ponder(GameBoard gameBoard, int reply, SearchLimits limits) {
+		int human = GameBoard.colorIndex(gameBoard.player1color);
+		if (reply == Move.NONE || (gameBoard.getEmptyBits() & (1L << Move.getCell(reply))) == 0) {
+			current = computers.get();
+			reply = current.iterativeDeepening(new GameBoard(gameBoard), true,
+					new SearchLimits(PREDICT_DEPTH)).getBestMove();
+		}
+		if (cancelled || reply == Move.NONE) {
+			return;
+		}
+		gameBoard.makeMove(reply, human);
+		if (gameBoard.isGameOver()) {
+			return;
+		}
+		predicted = new GameBoard(gameBoard);
+		current = computers.get();
+		if (!cancelled) {
+			result = current.iterativeDeepening(gameBoard, false, limits);
+		}
+	}
+
+	/**
+	 * Ends pondering once the human has moved.
+	 *
+	 * @param gameBoard the gameboard after the human's move.
+	 * @param timeMillis how long to let a hit finish its search, 0 for
+	 * no limit.
+	 * @return the result of the background search on a ponder hit, null
+	 * on a miss or when nothing was pondered.
+	 */
+	public SearchResult finish(GameBoard gameBoard, long timeMillis) {
+		if (thread == null) {
+			return null;
+		}
+		GameBoard guess = predicted;
+		if (guess == null || !guess.equals(gameBoard)) {
+			misses++;
+			cancel();
+			return null;
+		}
+		hits++;
+		try {
+			thread.join(timeMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		//stopped, the search still returns its last completed iteration.
+		cancel();
+		return result;
+	}
+
+	/**
+	 * Stops the background search and waits for its thread to end.
+	 */
+	public void cancel() {
+		if (thread == null) {
+			return;
+		}
+		cancelled = true;
+		while (thread.isAlive()) {
+			//the next computer may not be made yet, so repeat it.
+			Computer computer = current;
+			if (computer != null) {
+				computer.stop();
+			}
+			try {
+				thread.join(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		thread = null;
+		current = null;
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	@Override
+	public String toString() {
+		return "ponder: " + hits + " hits, " + misses + " misses";
+	}
+}
@@ -0,0 +1,373 @@
+/**
+ * This class proves whether the player to move has a forced win, with
+ * depth-first proof-number search (df-pn). Every node has a proof
+ * number, the least number of leaves that would have to be proven to
+ * prove it a win, and a disproof number, the least number that would
+ * have to be disproven. At a node where the attacker (the player to
+ * move at the root) moves, one winning move is enough, so its proof
+ * number is the smallest of its children's and its disproof number
+ * the sum. Where the defender moves it is the other way around. The
+ * search always goes down to the most proving node, and only comes
+ * back up when the numbers of the node pass the thresholds given by
+ * its parent, so it needs no tree in memory, only the table.
+ *
+ * A draw is not a win, so for the attacker it counts the same as a
+ * loss. A rotation can make a five for both players at once, which is
+ * a draw: a defender move that does that disproves the node, and an
+ * attacker move that does it is never a win. A win at once is found
+ * with Threats.hasWin before the moves are made.
+ *
+ * The table holds the numbers of each position together with the work
+ * (nodes) spent on it. It is bounded: a full bucket replaces its entry
+ * with the least work, and when the table is three quarters full the
+ * half of the entries with the least work is thrown away.
+ */
+public class ProofNumberSearch {
+	public static final int DEFAULT_TABLE_BITS = 20;	//1M entries, 20 MB.
+	//proof and disproof number of a node that is proven or disproven.
+	static final int INFINITY = 100000000;
+	private static final int BUCKET = 4;			//entries one position can go in.
+
+	//the table. A key is stored plus 1, so an empty slot is 0.
+	private final long[] keys;
+	private final int[] proofs;
+	private final int[] disproofs;
+	private final int[] work;
+	private final int mask;
+	private int used;							//entries in use.
+	private int collections;					//times the table was garbage collected.
+
+	//the moves of each ply and the positions after them, from the point
+	//of view of the player to move after the move.
+	private final long[][] childToMove = new long[GameBoard.CELLS + 1][GameBoard.MAX_MOVES];
+	private final long[][] childOther = new long[GameBoard.CELLS + 1][GameBoard.MAX_MOVES];
+	private final int[][] childMoves = new int[GameBoard.CELLS + 1][GameBoard.MAX_MOVES];
+	//the numbers of those positions. A node keeps them here while it is
+	//searched, so they can not be lost to the garbage collection.
+	private final long[][] childNumbers = new long[GameBoard.CELLS + 1][GameBoard.MAX_MOVES];
+	//whether the player to move after the move might win at once.
+	private final boolean[][] childThreats = new boolean[GameBoard.CELLS + 1][GameBoard.MAX_MOVES];
+	private int winningMove;					//the root move that proved the root.
+	private long nodes;
+	private long nodeLimit;						//nodes to give up at, 0 for none.
+	private boolean aborted;
+
+	public ProofNumberSearch() {
+		this(DEFAULT_TABLE_BITS);
+	}
+
+	/**
+	 * @param tableBits log2 of the number of table entries.
+	 */
+	public ProofNumberSearch(int tableBits) {
+		int size = 1 << tableBits;
+		keys = new long[size];
+		proofs = new int[size];
+		disproofs = new int[size];
+		work = new int[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Sets the most nodes a proof may take before it gives up.
+	 *
+	 * @param nodeLimit the node limit, 0 for none.
+	 */
+	public void setNodeLimit(long nodeLimit) {
+		this.nodeLimit = nodeLimit;
+	}
+
+	/**
+	 * @return the times the table was garbage collected so far.
+	 */
+	public int getCollections() {
+		return collections;
+	}
+
+	/**
+	 * Proves or disproves that the player to move has a forced win. The
+	 * table is kept between proofs, since what it proved stays true.
+	 *
+	 * @param gameBoard the gameboard, which is not changed.
+	 * @param alphaPlayer whether the player to move is the alpha player.
+	 * @return the result, with a winning move if it is a win.
+	 */
+	public ProofResult prove(GameBoard gameBoard, boolean alphaPlayer) {
+		long start = System.nanoTime();
+		nodes = 0;
+		aborted = false;
+		winningMove = Move.NONE;
+		int color = GameBoard.colorIndex(alphaPlayer ? gameBoard.player1color : gameBoard.player2color);
+		ProofResult result = new ProofResult();
+		int state = gameBoard.getResult();
+		if (state != GameBoard.IN_PROGRESS) {
+			result.setResult(state == (color == GameBoard.BLACK ? GameBoard.BLACK_WINS : GameBoard.WHITE_WINS)
+					? ProofResult.WIN : ProofResult.NO_WIN);
+		} else {
+			long numbers = search(gameBoard.getBits(color), gameBoard.getBits(1 - color), 0, INFINITY, INFINITY);
+			if (aborted) {
+				result.setResult(ProofResult.UNKNOWN);
+			} else if (getProof(numbers) == 0) {
+				result.setResult(ProofResult.WIN);
+				result.setBestMove(winningMove != Move.NONE ? winningMove
+						: Threats.findWin(gameBoard, color, new int[GameBoard.MAX_MOVES]));
+			} else {
+				result.setResult(ProofResult.NO_WIN);
+			}
+		}
+		result.setNodes(nodes);
+		result.setTimeMillis((System.nanoTime() - start) / 1000000);
+		result.setTableUsage((double) used / keys.length);
+		result.setCollections(collections);
+		return result;
+	}
+
+	/**
+	 * Searches a node until its proof number reaches proofThreshold or
+	 * its disproof number reaches disproofThreshold. Nodes at even plies
+	 * are the attacker's.
+	 *
+	 * @param toMove the bitboard of the player to move.
+	 * @param other the bitboard of the other player.
+	 * @param ply how many moves deep this position is from the root.
+	 * @return the proof and disproof numbers of the node, packed.
+	 */
+	private long search(long toMove, long other, int ply, int proofThreshold, int disproofThreshold) {
+		nodes++;
+		long startNodes = nodes;
+		if (nodeLimit > 0 && nodes >= nodeLimit) {
+			aborted = true;
+		}
+		boolean attacker = (ply & 1) == 0;
+		long key = key(toMove, other, attacker);
+		if (Threats.hasWin(toMove, other)) {
+			return store(key, attacker ? pack(0, INFINITY) : pack(INFINITY, 0), 1);
+		}
+		int count = generate(toMove, other, ply, attacker);
+		if (count < 0) {
+			//a move that ends the game decides the node.
+			return store(key, attacker ? pack(0, INFINITY) : pack(INFINITY, 0), 1);
+		}
+		if (count == 0) {
+			//every move ends the game the other player's way.
+			return store(key, attacker ? pack(INFINITY, 0) : pack(0, INFINITY), 1);
+		}
+		long[] toMoves = childToMove[ply];
+		long[] others = childOther[ply];
+		long[] numbers = childNumbers[ply];
+		boolean[] threats = childThreats[ply];
+		for (int i = 0; i < count; i++) {
+			numbers[i] = lookup(toMoves[i], others[i], !attacker, threats[i]);
+		}
+		while (true) {
+			//the attacker picks the child with the least proof number, the
+			//defender the one with the least disproof number.
+			int min = INFINITY;
+			int secondMin = INFINITY;
+			long sum = 0;
+			int best = 0;
+			int bestNumber = 0;
+			for (int i = 0; i < count; i++) {
+				int picked = attacker ? getProof(numbers[i]) : getDisproof(numbers[i]);
+				int summed = attacker ? getDisproof(numbers[i]) : getProof(numbers[i]);
+				if (picked < min) {
+					secondMin = min;
+					min = picked;
+					best = i;
+					bestNumber = summed;
+				} else if (picked < secondMin) {
+					secondMin = picked;
+				}
+				if (sum != INFINITY) {
+					sum = summed == INFINITY ? INFINITY : Math.min(INFINITY - 1, sum + summed);
+				}
+			}
+			int total = (int) sum;
+			int proof = attacker ? min : total;
+			int disproof = attacker ? total : min;
+			if (ply == 0 && proof == 0) {
+				winningMove = childMoves[0][best];
+			}
+			if (proof >= proofThreshold || disproof >= disproofThreshold || aborted) {
+				int spent = (int) Math.min(Integer.MAX_VALUE, nodes - startNodes + 1);
+				return store(key, pack(proof, disproof), spent);
+			}
+			//thresholds of the child, so that it comes back as soon as
+			//another child would be better or this node passes its own.
+			int pickedThreshold = Math.min(attacker ? proofThreshold : disproofThreshold,
+					secondMin == INFINITY ? INFINITY : secondMin + 1);
+			long summedThreshold = (long) (attacker ? disproofThreshold : proofThreshold) - total + bestNumber;
+			int childSummed = (int) Math.min(INFINITY, summedThreshold);
+			if (attacker) {
+				numbers[best] = search(toMoves[best], others[best], ply + 1, pickedThreshold, childSummed);
+			} else {
+				numbers[best] = search(toMoves[best], others[best], ply + 1, childSummed, pickedThreshold);
+			}
+		}
+	}
+
+	/**
+	 * Makes every move of the player to move on the bitboards and keeps
+	 * the ones that do not end the game for the ply. A move that ends
+	 * it the mover's way (a win, or a draw for the defender) decides the
+	 * node, and one that ends it the other way is left out.
+	 *
+	 * The other player's pieces only depend on the rotation, and a piece
+	 * can only take a win away from them, so as in EndgameSolver whether
+	 * they might win next is checked once per rotation.
+	 *
+	 * @return the number of moves kept, -1 if a move decides the node.
+	 */
+	private int generate(long toMove, long other, int ply, boolean attacker) {
+		long[] toMoves = childToMove[ply];
+		long[] others = childOther[ply];
+		int[] moves = childMoves[ply];
+		boolean[] threats = childThreats[ply];
+		long empty = GameBoard.FULL_BOARD & ~(toMove | other);
+		int count = 0;
+		for (int rotation = 0; rotation < 8; rotation++) {
+			int quadrant = rotation >> 1;
+			int dir = rotation & 1;
+			long rotatedMine = GameBoard.rotateBits(toMove, quadrant, dir);
+			long newOther = GameBoard.rotateBits(other, quadrant, dir);
+			boolean otherFive = GameBoard.hasFive(newOther);
+			boolean threat = !otherFive && Threats.hasWin(newOther, rotatedMine);
+			for (long cells = empty; cells != 0; cells &= cells - 1) {
+				int cell = Long.numberOfTrailingZeros(cells);
+				long newMine = rotatedMine | EndgameSolver.ROTATED_CELL[rotation][cell];
+				boolean myFive = GameBoard.hasFive(newMine);
+				boolean draw = (myFive && otherFive) || (!myFive && !otherFive
+						&& (newMine | newOther) == GameBoard.FULL_BOARD);
+				if ((myFive && !otherFive) || (draw && !attacker)) {
+					if (ply == 0) {
+						winningMove = Move.encode(cell, quadrant, dir);
+					}
+					return -1;
+				}
+				if (draw || otherFive) {
+					continue;
+				}
+				toMoves[count] = newOther;
+				others[count] = newMine;
+				threats[count] = threat;
+				moves[count++] = Move.encode(cell, quadrant, dir);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * The numbers of a position: from the table, or else the numbers of
+	 * a new leaf. A leaf where the player to move can win at once is
+	 * proven or disproven already, and stored so that other nodes that
+	 * reach it do not check again.
+	 *
+	 * @param threat false if the player to move is known not to have a
+	 * win at once.
+	 */
+	private long lookup(long toMove, long other, boolean attacker, boolean threat) {
+		long key = key(toMove, other, attacker);
+		int index = bucket(key);
+		for (int i = index; i < index + BUCKET; i++) {
+			if (keys[i] == key + 1) {
+				return pack(proofs[i], disproofs[i]);
+			}
+		}
+		if (!threat || !Threats.hasWin(toMove, other)) {
+			return pack(1, 1);
+		}
+		return store(key, attacker ? pack(0, INFINITY) : pack(INFINITY, 0), 0);
+	}
+
+	/**
+	 * Stores the numbers of a position. It goes in the slot that holds
+	 * the position already, an empty slot, or the slot with the least
+	 * work in its bucket.
+	 *
+	 * @param spent the nodes spent on the position by this search.
+	 * @return the numbers.
+	 */
+	private long store(long key, long numbers, int spent) {
+		int index = bucket(key);
+		int slot = -1;
+		for (int i = index; i < index + BUCKET && slot < 0; i++) {
+			if (keys[i] == key + 1) {
+				slot = i;
+				spent = (int) Math.min(Integer.MAX_VALUE, (long) work[i] + spent);
+			}
+		}
+		if (slot < 0) {
+			if (used >= keys.length / 4 * 3) {
+				collect();
+			}
+			for (int i = index; i < index + BUCKET && slot < 0; i++) {
+				if (keys[i] == 0) {
+					slot = i;
+					used++;
+				}
+			}
+		}
+		if (slot < 0) {
+			slot = index;
+			for (int i = index + 1; i < index + BUCKET; i++) {
+				if (work[i] < work[slot]) {
+					slot = i;
+				}
+			}
+		}
+		keys[slot] = key + 1;
+		proofs[slot] = getProof(numbers);
+		disproofs[slot] = getDisproof(numbers);
+		work[slot] = spent;
+		return numbers;
+	}
+
+	/**
+	 * Garbage collects the table: throws away the entries with the least
+	 * work, about half of them. Entries are grouped by the power of 2 of
+	 * their work, and whole groups are thrown away, smallest first.
+	 */
+	private void collect() {
+		int[] groups = new int[33];
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0) {
+				groups[32 - Integer.numberOfLeadingZeros(work[i])]++;
+			}
+		}
+		int limit = 0;
+		for (int removed = groups[0]; removed < used / 2 && limit < 32; removed += groups[limit]) {
+			limit++;
+		}
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != 0 && 32 - Integer.numberOfLeadingZeros(work[i]) <= limit) {
+				keys[i] = 0;
+				used--;
+			}
+		}
+		collections++;
+	}
+
+	private int bucket(long key) {
+		return (int) Symmetry.hashKey(key) & mask & -BUCKET;
+	}
+
+	/**
+	 * The key of a position: its exact key (see Symmetry.key) and
+	 * whether the attacker is to move.
+	 */
+	private static long key(long toMove, long other, boolean attacker) {
+		return Symmetry.key(toMove, other) << 1 | (attacker ? 1 : 0);
+	}
+
+	private static long pack(int proof, int disproof) {
+		return (long) proof << 32 | disproof;
+	}
+
+	private static int getProof(long numbers) {
+		return (int) (numbers >>> 32);
+	}
+
+	private static int getDisproof(long numbers) {
+		return (int) numbers;
+	}
+}
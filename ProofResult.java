@@ -0,0 +1,80 @@
+/**
+ * This class holds the outcome of a proof-number search: whether the
+ * player to move was proven to have a forced win, the move that wins,
+ * and how much work and memory it took.
+ */
+public class ProofResult {
+	//outcomes.
+	public static final int WIN = 0;			//the player to move has a forced win.
+	public static final int NO_WIN = 1;			//the other player can hold a draw or win.
+	public static final int UNKNOWN = 2;		//the node limit was reached first.
+
+	private int result = UNKNOWN;
+	private int bestMove = Move.NONE;		//a winning move when the result is WIN.
+	private long nodes;						//number of nodes expanded.
+	private long timeMillis;				//how long the search took.
+	private double tableUsage;				//fraction of the table in use at the end.
+	private int collections;				//times the table was garbage collected.
+
+	public int getResult() {
+		return result;
+	}
+
+	public void setResult(int result) {
+		this.result = result;
+	}
+
+	public int getBestMove() {
+		return bestMove;
+	}
+
+	public void setBestMove(int bestMove) {
+		this.bestMove = bestMove;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public void setNodes(long nodes) {
+		this.nodes = nodes;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	public void setTimeMillis(long timeMillis) {
+		this.timeMillis = timeMillis;
+	}
+
+	/**
+	 * @return nodes expanded per second, 0 when no time was measured.
+	 */
+	public long getNodesPerSecond() {
+		return timeMillis == 0 ? 0 : nodes * 1000 / timeMillis;
+	}
+
+	public double getTableUsage() {
+		return tableUsage;
+	}
+
+	public void setTableUsage(double tableUsage) {
+		this.tableUsage = tableUsage;
+	}
+
+	public int getCollections() {
+		return collections;
+	}
+
+	public void setCollections(int collections) {
+		this.collections = collections;
+	}
+
+	@Override
+	public String toString() {
+		String name = result == WIN ? "win " + Move.toString(bestMove) : result == NO_WIN ? "no win" : "unknown";
+		return String.format("%s: %d nodes in %d ms (%d nodes/s), table %.1f%% full, %d collections",
+				name, nodes, timeMillis, getNodesPerSecond(), 100 * tableUsage, collections);
+	}
+}
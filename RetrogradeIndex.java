@@ -0,0 +1,119 @@
+/**
+ * This class numbers the positions of each stone count for the
+ * retrograde solver. Colors are swapped so that the player to move
+ * always plays "mine": with s stones on the board the player to move
+ * has s / 2 of them and the other player the rest, since moves
+ * alternate. Both colors play by the same rules, so the value does not
+ * depend on which color it is.
+ *
+ * A position is numbered by the set of occupied cells and by which of
+ * them are mine, each ranked in the combinatorial number system:
+ *
+ *   index = rank(occupied) * C(s, s / 2) + rank(mine within occupied)
+ *
+ * so the positions of a slice are numbered 0 to size(s) - 1 without
+ * gaps.
+ */
+public class RetrogradeIndex {
+	//BINOMIAL[n][k] = n choose k.
+	private static final long[][] BINOMIAL = new long[GameBoard.CELLS + 1][GameBoard.CELLS + 1];
+
+	static {
+		for (int n = 0; n <= GameBoard.CELLS; n++) {
+			BINOMIAL[n][0] = 1;
+			for (int k = 1; k <= n; k++) {
+				BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k <= n - 1 ? BINOMIAL[n - 1][k] : 0);
+			}
+		}
+	}
+
+	private RetrogradeIndex() {
+		//only static helpers
+	}
+
+	/**
+	 * @param stones stones on the board.
+	 * @return the stones of the player to move.
+	 */
+	public static int moverStones(int stones) {
+		return stones / 2;
+	}
+
+	/**
+	 * @param stones stones on the board.
+	 * @return the number of positions with that many stones.
+	 */
+	public static long size(int stones) {
+		return BINOMIAL[GameBoard.CELLS][stones] * BINOMIAL[stones][moverStones(stones)];
+	}
+
+	/**
+	 * Numbers a position.
+	 *
+	 * @param mine the bitboard of the player to move.
+	 * @param theirs the bitboard of the other player.
+	 * @return the index of the position in its slice.
+	 */
+	public static long rank(long mine, long theirs) {
+		long occupied = mine | theirs;
+		int stones = Long.bitCount(occupied);
+		long occupiedRank = 0;
+		long mineRank = 0;
+		int k = 0;			//occupied cells so far.
+		int mineCount = 0;	//of them mine.
+		for (long cells = occupied; cells != 0; cells &= cells - 1) {
+			int cell = Long.numberOfTrailingZeros(cells);
+			occupiedRank += BINOMIAL[cell][++k];
+			if ((mine & (1L << cell)) != 0) {
+				mineRank += BINOMIAL[k - 1][++mineCount];
+			}
+		}
+		return occupiedRank * BINOMIAL[stones][moverStones(stones)] + mineRank;
+	}
+
+	/**
+	 * Finds the position with an index.
+	 *
+	 * @param stones stones on the board.
+	 * @param index the index of the position in its slice.
+	 * @param position filled with the bitboards of the player to move and
+	 * of the other player.
+	 */
+	public static void unrank(int stones, long index, long[] position) {
+		int mover = moverStones(stones);
+		long mineRank = index % BINOMIAL[stones][mover];
+		long occupiedRank = index / BINOMIAL[stones][mover];
+		//the occupied cells, highest first.
+		long occupied = 0;
+		int cell = GameBoard.CELLS;
+		for (int k = stones; k > 0; k--) {
+			do {
+				cell--;
+			} while (BINOMIAL[cell][k] > occupiedRank);
+			occupiedRank -= BINOMIAL[cell][k];
+			occupied |= 1L << cell;
+		}
+		//which of them are mine, by their number among the occupied cells.
+		long mine = 0;
+		int n = stones;
+		for (int k = mover; k > 0; k--) {
+			do {
+				n--;
+			} while (BINOMIAL[n][k] > mineRank);
+			mineRank -= BINOMIAL[n][k];
+			mine |= nthCell(occupied, n);
+		}
+		position[0] = mine;
+		position[1] = occupied & ~mine;
+	}
+
+	/**
+	 * @return the n-th lowest cell of a bitboard, as a bitboard.
+	 */
+	private static long nthCell(long bits, int n) {
+		for (int i = 0; i < n; i++) {
+			bits &= bits - 1;
+		}
+		return Long.lowestOneBit(bits);
+	}
+}
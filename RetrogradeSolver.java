@@ -0,0 +1,342 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * This class computes the exact value of every position by retrograde
+ * analysis, one stone count (slice) at a time from the full board
+ * down. A move adds a stone, so the value of every position with s
+ * stones follows from the values of the positions with s + 1 stones,
+ * which are read back from the slice written before it (see
+ * RetrogradeTables). Every move from 35 stones fills the board, and a
+ * full board is valued by its fives alone (see valueAfter), so the
+ * slices start at 35 stones and the full board has none.
+ *
+ * A slice is split into blocks of positions that are solved in
+ * parallel on a fork-join pool. Each solved block is compressed and
+ * written to a file of its own in a directory of the slice, so a run
+ * that is stopped starts again from the blocks already written. Once
+ * every block is written they are joined into the slice file and the
+ * block files are deleted. Files are always written under a temporary
+ * name and renamed when they are complete.
+ *
+ * Run it with the directory, the stone counts to go from and to, and
+ * the number of threads, or with "sizes" to print how many positions
+ * each slice has:
+ *
+ *   java RetrogradeSolver tables 35 30 8
+ *   java RetrogradeSolver sizes
+ *
+ * The slices in the middle of the game hold up to 10^14 positions, so
+ * the whole game is far beyond one machine, but any run of slices down
+ * from the full board can be computed and used by the engine.
+ */
+public class RetrogradeSolver {
+	public static final int DEFAULT_BLOCK_POSITIONS = 1 << 20;
+
+	private final File directory;
+	private final int blockPositions;
+	private final ForkJoinPool pool;
+	private final RetrogradeTables tables;		//the slices already solved.
+	private final AtomicInteger blocksDone = new AtomicInteger();
+
+	/**
+	 * @param directory the directory of the slice files.
+	 * @param blockPositions positions per block, a multiple of 4.
+	 * @param threads threads solving each slice.
+	 */
+	public RetrogradeSolver(File directory, int blockPositions, int threads) {
+		this.directory = directory;
+		this.blockPositions = blockPositions;
+		this.pool = new ForkJoinPool(threads);
+		this.tables = new RetrogradeTables(directory);
+	}
+
+	/**
+	 * Main method that solves the slices named in the arguments.
+	 *
+	 * @param args directory, most and fewest stones and threads, or
+	 * "sizes".
+	 * @throws IOException if a slice can not be written.
+	 */
+	public static void main(String args[]) throws IOException {
+		if (args.length == 0 || args[0].equals("sizes")) {
+			for (int stones = 0; stones <= GameBoard.CELLS; stones++) {
+				System.out.printf("%2d stones: %,d positions%n", stones, RetrogradeIndex.size(stones));
+			}
+			return;
+		}
+		File directory = new File(args[0]);
+		int from = args.length > 1 ? Integer.parseInt(args[1]) : GameBoard.CELLS - 1;
+		int to = args.length > 2 ? Integer.parseInt(args[2]) : from;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("could not create " + directory);
+		}
+		RetrogradeSolver solver = new RetrogradeSolver(directory, DEFAULT_BLOCK_POSITIONS, threads);
+		solver.solve(from, to);
+		solver.shutdown();
+	}
+
+	/**
+	 * Solves the slices from the most stones down to the fewest. Slices
+	 * that are already written are skipped, and so is the full board,
+	 * which needs no slice. The slice after the first one has to be
+	 * there unless it is the full board.
+	 *
+	 * @param from the most stones.
+	 * @param to the fewest stones.
+	 * @throws IOException if a slice can not be written.
+	 */
+	public void solve(int from, int to) throws IOException {
+		for (int stones = from; stones >= to; stones--) {
+			if (stones == GameBoard.CELLS) {
+				System.out.println(stones + " stones: full boards are valued without a slice");
+				continue;
+			}
+			if (RetrogradeTables.sliceFile(directory, stones).exists()) {
+				System.out.println(stones + " stones: already solved");
+				continue;
+			}
+			if (stones < GameBoard.CELLS - 1 && !tables.hasSlice(stones + 1)) {
+				throw new IllegalStateException("the slice of " + (stones + 1) + " stones is missing");
+			}
+			long start = System.nanoTime();
+			solveSlice(stones, tables);
+			System.out.printf("%d stones: %,d positions in %d s%n", stones, RetrogradeIndex.size(stones),
+					(System.nanoTime() - start) / 1000000000);
+		}
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+		tables.close();
+	}
+
+	/**
+	 * Solves every block of a slice that is not written yet and joins
+	 * the blocks into the slice file.
+	 *
+	 * @param stones stones on the board.
+	 * @param next the values of the slice with one more stone.
+	 * @throws IOException if the slice can not be written.
+	 */
+	void solveSlice(int stones, RetrogradeTables next) throws IOException {
+		long positions = RetrogradeIndex.size(stones);
+		int blockCount = (int) ((positions + blockPositions - 1) / blockPositions);
+		File blockDirectory = new File(directory, String.format("slice-%02d.blocks", stones));
+		if (!blockDirectory.isDirectory() && !blockDirectory.mkdirs()) {
+			throw new IOException("could not create " + blockDirectory);
+		}
+		blocksDone.set(0);
+		try {
+			pool.invoke(new BlockTask(stones, 0, blockCount, next, blockDirectory));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		join(stones, positions, blockCount, blockDirectory);
+	}
+
+	/**
+	 * Solves a range of blocks, splitting it in two until it is one
+	 * block.
+	 */
+	private class BlockTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int stones;
+		private final int first;
+		private final int end;
+		private final RetrogradeTables next;
+		private final File blockDirectory;
+
+		BlockTask(int stones, int first, int end, RetrogradeTables next, File blockDirectory) {
+			this.stones = stones;
+			this.first = first;
+			this.end = end;
+			this.next = next;
+			this.blockDirectory = blockDirectory;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - first > 1) {
+				int middle = (first + end) >>> 1;
+				invokeAll(new BlockTask(stones, first, middle, next, blockDirectory),
+						new BlockTask(stones, middle, end, next, blockDirectory));
+				return;
+			}
+			try {
+				solveBlock(stones, first, next, blockDirectory);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	/**
+	 * Solves the positions of one block and writes them to the block's
+	 * file, unless a run before already did.
+	 */
+	private void solveBlock(int stones, int block, RetrogradeTables next, File blockDirectory) throws IOException {
+		File file = blockFile(blockDirectory, block);
+		if (file.exists()) {
+			return;
+		}
+		long first = (long) block * blockPositions;
+		int count = (int) Math.min(blockPositions, RetrogradeIndex.size(stones) - first);
+		byte[] values = new byte[(count + 3) / 4];
+		long[] position = new long[2];
+		for (int i = 0; i < count; i++) {
+			RetrogradeIndex.unrank(stones, first + i, position);
+			int value = value(position[0], position[1], next);
+			values[i >> 2] |= (value + 1) << ((i & 3) * 2);
+		}
+		writeAtomically(file, deflate(values));
+		int done = blocksDone.incrementAndGet();
+		int blockCount = (int) ((RetrogradeIndex.size(stones) + blockPositions - 1) / blockPositions);
+		if (done % Math.max(1, blockCount / 100) == 0) {
+			System.out.printf("%d stones: %d of %d blocks%n", stones, done, blockCount);
+		}
+	}
+
+	/**
+	 * Joins the block files into the slice file (see RetrogradeTables
+	 * for its layout) and deletes them.
+	 */
+	private void join(int stones, long positions, int blockCount, File blockDirectory) throws IOException {
+		long[] offsets = new long[blockCount + 1];
+		offsets[0] = 24 + 8L * (blockCount + 1);
+		for (int block = 0; block < blockCount; block++) {
+			offsets[block + 1] = offsets[block] + blockFile(blockDirectory, block).length();
+		}
+		File file = RetrogradeTables.sliceFile(directory, stones);
+		File temp = new File(file.getPath() + ".tmp");
+		try (FileOutputStream stream = new FileOutputStream(temp);
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+			out.writeInt(RetrogradeTables.MAGIC);
+			out.writeInt(stones);
+			out.writeLong(positions);
+			out.writeInt(blockPositions);
+			out.writeInt(blockCount);
+			for (long offset : offsets) {
+				out.writeLong(offset);
+			}
+			for (int block = 0; block < blockCount; block++) {
+				Files.copy(blockFile(blockDirectory, block).toPath(), out);
+			}
+			out.flush();
+			stream.getFD().sync();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		for (int block = 0; block < blockCount; block++) {
+			Files.delete(blockFile(blockDirectory, block).toPath());
+		}
+		Files.delete(blockDirectory.toPath());
+	}
+
+	private static File blockFile(File blockDirectory, int block) {
+		return new File(blockDirectory, String.format("block-%08d.z", block));
+	}
+
+	/**
+	 * Writes a file under a temporary name, syncs it and then renames
+	 * it, so the file either is complete or does not exist.
+	 */
+	private static void writeAtomically(File file, byte[] data) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		try (FileOutputStream out = new FileOutputStream(temp)) {
+			out.write(data);
+			out.getFD().sync();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static byte[] deflate(byte[] values) {
+		Deflater deflater = new Deflater();
+		try {
+			deflater.setInput(values);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(values.length / 4 + 64);
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * The value of a position, with the values of the positions after
+	 * each move looked up in the next slice. Positions where the game
+	 * is over are numbered too, and get the value of the result.
+	 *
+	 * @param mine the bitboard of the player to move.
+	 * @param theirs the bitboard of the other player.
+	 * @param next the values of the slice with one more stone.
+	 * @return WIN, DRAW or LOSS for the player to move.
+	 */
+	static int value(long mine, long theirs, RetrogradeTables next) {
+		int over = valueAfter(mine, theirs);
+		if (over != RetrogradeTables.UNKNOWN) {
+			return over;
+		}
+		if (Threats.hasWin(mine, theirs)) {
+			return EndgameSolver.WIN;
+		}
+		int best = EndgameSolver.LOSS;
+		long empty = GameBoard.FULL_BOARD & ~(mine | theirs);
+		for (int rotation = 0; rotation < 8; rotation++) {
+			int quadrant = rotation >> 1;
+			int dir = rotation & 1;
+			long rotatedMine = GameBoard.rotateBits(mine, quadrant, dir);
+			long newTheirs = GameBoard.rotateBits(theirs, quadrant, dir);
+			for (long cells = empty; cells != 0; cells &= cells - 1) {
+				long newMine = rotatedMine | EndgameSolver.ROTATED_CELL[rotation][Long.numberOfTrailingZeros(cells)];
+				int value = valueAfter(newMine, newTheirs);
+				if (value == RetrogradeTables.UNKNOWN) {
+					value = -next.value(newTheirs, newMine);
+				}
+				if (value > best) {
+					best = value;
+					if (best == EndgameSolver.WIN) {
+						return best;
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The value of a position for the player who just moved, if the
+	 * game is over: a five wins, fives for both players or a full board
+	 * is a draw.
+	 *
+	 * @param mine the bitboard of the player who moved.
+	 * @param theirs the bitboard of the other player.
+	 * @return WIN, DRAW or LOSS, or UNKNOWN if the game goes on.
+	 */
+	static int valueAfter(long mine, long theirs) {
+		boolean myFive = GameBoard.hasFive(mine);
+		boolean theirFive = GameBoard.hasFive(theirs);
+		if (myFive) {
+			return theirFive ? EndgameSolver.DRAW : EndgameSolver.WIN;
+		}
+		if (theirFive) {
+			return EndgameSolver.LOSS;
+		}
+		return (mine | theirs) == GameBoard.FULL_BOARD ? EndgameSolver.DRAW : RetrogradeTables.UNKNOWN;
+	}
+}
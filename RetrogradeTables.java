@@ -0,0 +1,280 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This class looks up the values computed by RetrogradeSolver. Each
+ * stone count has a slice file in the directory, SLICE_NAME with the
+ * stone count. The file starts with a header:
+ *
+ *   int  MAGIC
+ *   int  stones
+ *   long positions in the slice (see RetrogradeIndex)
+ *   int  positions per block
+ *   int  number of blocks
+ *   long offset of each block in the file, and of the end of the last
+ *
+ * followed by the blocks, each compressed with Deflater. A block holds
+ * the value of each of its positions in 2 bits, 4 to a byte, lowest
+ * bits first: the value from the point of view of the player to move
+ * plus 1 (see EndgameSolver.WIN, DRAW and LOSS).
+ *
+ * Blocks are read and inflated when they are first needed, and the
+ * most recently used are kept in memory.
+ */
+public class RetrogradeTables {
+	public static final int MAGIC = 0x50524554;		//"PRET"
+	public static final String SLICE_NAME = "slice-%02d.dat";
+	public static final int UNKNOWN = -2;			//value of a position without a slice.
+	public static final int DEFAULT_CACHED_BLOCKS = 256;
+
+	private final File directory;
+	private final Slice[] slices = new Slice[GameBoard.CELLS + 1];
+	private final boolean[] missing = new boolean[GameBoard.CELLS + 1];
+	private final Map<Long, byte[]> blocks;		//(stones, block) -> values, least recently used first.
+
+	/**
+	 * An open slice file.
+	 */
+	private static class Slice {
+		FileChannel channel;
+		int blockPositions;
+		long[] offsets;
+	}
+
+	public RetrogradeTables(File directory) {
+		this(directory, DEFAULT_CACHED_BLOCKS);
+	}
+
+	/**
+	 * @param directory the directory of the slice files.
+	 * @param cachedBlocks the most inflated blocks kept in memory.
+	 */
+	public RetrogradeTables(File directory, int cachedBlocks) {
+		this.directory = directory;
+		this.blocks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+				return size() > cachedBlocks;
+			}
+		};
+	}
+
+	public static File sliceFile(File directory, int stones) {
+		return new File(directory, String.format(SLICE_NAME, stones));
+	}
+
+	/**
+	 * @param stones stones on the board.
+	 * @return whether the slice of that many stones has been computed.
+	 */
+	public boolean hasSlice(int stones) {
+		return slice(stones) != null;
+	}
+
+	/**
+	 * Looks up the value of a position.
+	 *
+	 * @param mine the bitboard of the player to move.
+	 * @param theirs the bitboard of the other player. It has as many
+	 * stones as mine or one more.
+	 * @return WIN, DRAW or LOSS for the player to move, or UNKNOWN if
+	 * the slice was not computed.
+	 */
+	public int value(long mine, long theirs) {
+		int stones = Long.bitCount(mine | theirs);
+		Slice slice = slice(stones);
+		if (slice == null) {
+			return UNKNOWN;
+		}
+		long index = RetrogradeIndex.rank(mine, theirs);
+		int block = (int) (index / slice.blockPositions);
+		int offset = (int) (index % slice.blockPositions);
+		byte[] values = block(stones, block, slice);
+		return ((values[offset >> 2] >> ((offset & 3) * 2)) & 3) - 1;
+	}
+
+	/**
+	 * Finds the best move of a position with the values of the next
+	 * slice.
+	 *
+	 * @param gameBoard the gameboard, which is not changed.
+	 * @param alphaPlayer whether the player to move is the alpha player.
+	 * @return the move, the score from the max (alpha) player's point of
+	 * view (WIN_SCORE, 0 or -WIN_SCORE) and the number of empty cells as
+	 * the depth, or null if the next slice was not computed.
+	 */
+	public SearchResult probe(GameBoard gameBoard, boolean alphaPlayer) {
+		int color = GameBoard.colorIndex(alphaPlayer ? gameBoard.player1color : gameBoard.player2color);
+		long mine = gameBoard.getBits(color);
+		long theirs = gameBoard.getBits(1 - color);
+		int stones = Long.bitCount(mine | theirs);
+		if (gameBoard.getResult() != GameBoard.IN_PROGRESS
+				|| Long.bitCount(mine) != RetrogradeIndex.moverStones(stones)
+				|| (stones < GameBoard.CELLS - 1 && !hasSlice(stones + 1))) {
+			return null;
+		}
+		int bestValue = EndgameSolver.LOSS - 1;
+		int bestMove = Move.NONE;
+		long empty = GameBoard.FULL_BOARD & ~(mine | theirs);
+		for (int rotation = 0; rotation < 8 && bestValue < EndgameSolver.WIN; rotation++) {
+			int quadrant = rotation >> 1;
+			int dir = rotation & 1;
+			long newTheirs = GameBoard.rotateBits(theirs, quadrant, dir);
+			for (long cells = empty; cells != 0; cells &= cells - 1) {
+				int cell = Long.numberOfTrailingZeros(cells);
+				long newMine = GameBoard.rotateBits(mine | Long.lowestOneBit(cells), quadrant, dir);
+				int value = RetrogradeSolver.valueAfter(newMine, newTheirs);
+				if (value == UNKNOWN) {
+					value = -value(newTheirs, newMine);
+				}
+				if (value > bestValue) {
+					bestValue = value;
+					bestMove = Move.encode(cell, quadrant, dir);
+				}
+			}
+		}
+		SearchResult result = new SearchResult();
+		int score = bestValue * Computer.WIN_SCORE;
+		result.setScore(alphaPlayer ? score : -score);
+		result.setBestMove(bestMove);
+		result.setDepth(Long.bitCount(empty));
+		return result;
+	}
+
+	/**
+	 * Opens a slice file the first time it is needed.
+	 *
+	 * @return the slice, null if there is no file for it.
+	 */
+	private synchronized Slice slice(int stones) {
+		if (slices[stones] != null || missing[stones]) {
+			return slices[stones];
+		}
+		File file = sliceFile(directory, stones);
+		if (!file.exists()) {
+			missing[stones] = true;
+			return null;
+		}
+		try {
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			ByteBuffer header = ByteBuffer.allocate(24);
+			channel.read(header, 0);
+			header.flip();
+			if (header.getInt() != MAGIC || header.getInt() != stones
+					|| header.getLong() != RetrogradeIndex.size(stones)) {
+				throw new IOException("bad header");
+			}
+			Slice slice = new Slice();
+			slice.channel = channel;
+			slice.blockPositions = header.getInt();
+			int blockCount = header.getInt();
+			ByteBuffer offsets = ByteBuffer.allocate((blockCount + 1) * 8);
+			for (long position = 24; offsets.hasRemaining(); ) {
+				int read = channel.read(offsets, position);
+				if (read < 0) {
+					throw new IOException("cut off");
+				}
+				position += read;
+			}
+			offsets.flip();
+			slice.offsets = new long[blockCount + 1];
+			offsets.asLongBuffer().get(slice.offsets);
+			slices[stones] = slice;
+		} catch (IOException e) {
+			System.out.println("Could not open " + file + ": " + e.getMessage());
+			missing[stones] = true;
+		}
+		return slices[stones];
+	}
+
+	/**
+	 * Reads and inflates a block, or takes it from the cache.
+	 */
+	private byte[] block(int stones, int block, Slice slice) {
+		Long id = (long) stones << 32 | block;
+		synchronized (blocks) {
+			byte[] values = blocks.get(id);
+			if (values != null) {
+				return values;
+			}
+		}
+		byte[] values = readBlock(slice, block, RetrogradeIndex.size(stones));
+		synchronized (blocks) {
+			blocks.put(id, values);
+		}
+		return values;
+	}
+
+	private static byte[] readBlock(Slice slice, int block, long positions) {
+		long first = (long) block * slice.blockPositions;
+		int count = (int) Math.min(slice.blockPositions, positions - first);
+		ByteBuffer compressed = ByteBuffer.allocate((int) (slice.offsets[block + 1] - slice.offsets[block]));
+		try {
+			for (long position = slice.offsets[block]; compressed.hasRemaining(); ) {
+				int read = slice.channel.read(compressed, position);
+				if (read < 0) {
+					throw new IOException("cut off");
+				}
+				position += read;
+			}
+			return inflate(compressed.array(), (count + 3) / 4);
+		} catch (IOException e) {
+			throw new IllegalStateException("could not read block " + block, e);
+		}
+	}
+
+	/**
+	 * Inflates the values of a block.
+	 *
+	 * @param compressed the block as written.
+	 * @param length the length of the values in bytes.
+	 * @return the values.
+	 * @throws IOException if the block is damaged.
+	 */
+	static byte[] inflate(byte[] compressed, int length) throws IOException {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(compressed);
+			byte[] values = new byte[length];
+			int done = 0;
+			while (done < length && !inflater.finished()) {
+				int inflated = inflater.inflate(values, done, length - done);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				done += inflated;
+			}
+			if (done != length) {
+				throw new IOException("damaged block");
+			}
+			return values;
+		} catch (DataFormatException e) {
+			throw new IOException("damaged block", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Closes the slice files.
+	 */
+	public synchronized void close() {
+		for (int stones = 0; stones <= GameBoard.CELLS; stones++) {
+			if (slices[stones] != null) {
+				try {
+					slices[stones].channel.close();
+				} catch (IOException e) {
+					//nothing left to do with it.
+				}
+				slices[stones] = null;
+			}
+		}
+	}
+}
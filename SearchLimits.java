@@ -0,0 +1,59 @@
+/**
+ * This class holds the budget of a search: how deep it may go, how
+ * long it may take and how many nodes it may expand. A limit of 0 on
+ * time or nodes means that limit is not used.
+ */
+public class SearchLimits {
+	private int depth;			//deepest iteration to search.
+	private long timeMillis;	//wall-clock budget in milliseconds.
+	private long nodes;			//node budget.
+
+	/**
+	 * Constructor for a search limited only by depth.
+	 *
+	 * @param depth the deepest iteration to search.
+	 */
+	public SearchLimits(int depth) {
+		this(depth, 0, 0);
+	}
+
+	/**
+	 * @param depth the deepest iteration to search.
+	 * @param timeMillis wall-clock budget in milliseconds, 0 for none.
+	 * @param nodes node budget, 0 for none.
+	 */
+	public SearchLimits(int depth, long timeMillis, long nodes) {
+		this.depth = depth;
+		this.timeMillis = timeMillis;
+		this.nodes = nodes;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	public void setTimeMillis(long timeMillis) {
+		this.timeMillis = timeMillis;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public void setNodes(long nodes) {
+		this.nodes = nodes;
+	}
+
+	@Override
+	public String toString() {
+		return "depth " + depth + " time " + timeMillis + "ms nodes " + nodes;
+	}
+}
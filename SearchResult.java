@@ -0,0 +1,114 @@
+/**
+ * This class holds the outcome of a search: the score, the best move
+ * and how much work it took. A computer fills in one result per search
+ * instead of creating an array at every node.
+ */
+public class SearchResult {
+	private int score;				//score of the best move from the max (alpha) player's view.
+	private int bestMove;			//the packed best move, Move.NONE if there is none.
+	private int depth;				//the depth that was searched.
+	private long nodes;				//number of nodes expanded.
+	private long timeMillis;		//how long the search took.
+	private int[] principalVariation;	//best move and the moves expected after it.
+
+	public SearchResult() {
+		bestMove = Move.NONE;
+	}
+
+	/**
+	 * Clears the result so it can be filled in by another search.
+	 */
+	public void reset() {
+		score = 0;
+		bestMove = Move.NONE;
+		depth = 0;
+		nodes = 0;
+		timeMillis = 0;
+		principalVariation = null;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public void setScore(int score) {
+		this.score = score;
+	}
+
+	public int getBestMove() {
+		return bestMove;
+	}
+
+	public void setBestMove(int bestMove) {
+		this.bestMove = bestMove;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public void setNodes(long nodes) {
+		this.nodes = nodes;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	public void setTimeMillis(long timeMillis) {
+		this.timeMillis = timeMillis;
+	}
+
+	/**
+	 * Returns the best move followed by the moves both players are
+	 * expected to play after it. Only the algorithms that track it fill
+	 * it in; for the others it is just the best move.
+	 *
+	 * @return the packed moves of the principal variation.
+	 */
+	public int[] getPrincipalVariation() {
+		if (principalVariation == null) {
+			return bestMove == Move.NONE ? new int[0] : new int[] {bestMove};
+		}
+		return principalVariation;
+	}
+
+	public void setPrincipalVariation(int[] principalVariation) {
+		this.principalVariation = principalVariation;
+	}
+
+	/**
+	 * @return the principal variation in user input format.
+	 */
+	public String getPrincipalVariationString() {
+		StringBuilder builder = new StringBuilder();
+		for (int move : getPrincipalVariation()) {
+			if (builder.length() > 0) {
+				builder.append(", ");
+			}
+			builder.append(Move.toString(move));
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * @return nodes expanded per second.
+	 */
+	public long getNodesPerSecond() {
+		return timeMillis == 0 ? 0 : nodes * 1000 / timeMillis;
+	}
+
+	@Override
+	public String toString() {
+		return Move.toString(bestMove) + " score " + score + " depth " + depth + " nodes " + nodes
+				+ " time " + timeMillis + "ms";
+	}
+}
@@ -0,0 +1,231 @@
+/**
+ * This class handles the 8 symmetries of the board: 4 rotations of the
+ * whole board, with and without a mirror. A position and its mirror
+ * images are worth the same, and turning a quadrant in one is turning
+ * the matching quadrant in the other, so positions can share one
+ * canonical key: the smallest key among the 8 images.
+ *
+ * Transform t turns the board t % 4 quarter turns clockwise after
+ * mirroring it left to right when t >= 4. Transform 0 leaves the board
+ * as it is.
+ */
+public class Symmetry {
+	public static final int COUNT = 8;
+
+	//cell -> cell it is moved to by each transform.
+	static final int[][] CELL_MAP = new int[COUNT][GameBoard.CELLS];
+	//transform that undoes each transform.
+	static final int[] INVERSE = new int[COUNT];
+	//6-bit pattern of one row -> its cells after the transform.
+	private static final long[][][] ROW_MAP = new long[COUNT][6][64];
+	//6-bit pattern -> the same digits in base 3.
+	private static final long[] TERNARY = new long[64];
+	private static final long[] ROW_WEIGHT = new long[6];
+
+	static {
+		for (int t = 0; t < COUNT; t++) {
+			for (int cell = 0; cell < GameBoard.CELLS; cell++) {
+				int row = cell / 6;
+				int col = cell % 6;
+				if (t >= 4) {
+					col = 5 - col;
+				}
+				for (int turn = 0; turn < t % 4; turn++) {
+					int temp = row;
+					row = col;
+					col = 5 - temp;
+				}
+				CELL_MAP[t][cell] = row * 6 + col;
+			}
+		}
+		for (int t = 0; t < COUNT; t++) {
+			for (int u = 0; u < COUNT; u++) {
+				if (CELL_MAP[u][CELL_MAP[t][1]] == 1 && CELL_MAP[u][CELL_MAP[t][6]] == 6) {
+					INVERSE[t] = u;
+				}
+			}
+			for (int row = 0; row < 6; row++) {
+				for (int pattern = 0; pattern < 64; pattern++) {
+					long bits = 0;
+					for (int col = 0; col < 6; col++) {
+						if ((pattern & (1 << col)) != 0) {
+							bits |= 1L << CELL_MAP[t][row * 6 + col];
+						}
+					}
+					ROW_MAP[t][row][pattern] = bits;
+				}
+			}
+		}
+		for (int pattern = 0; pattern < 64; pattern++) {
+			long value = 0;
+			for (int col = 5; col >= 0; col--) {
+				value = value * 3 + ((pattern >>> col) & 1);
+			}
+			TERNARY[pattern] = value;
+		}
+		ROW_WEIGHT[0] = 1;
+		for (int row = 1; row < 6; row++) {
+			ROW_WEIGHT[row] = ROW_WEIGHT[row - 1] * 729;
+		}
+	}
+
+	private Symmetry() {
+		//only static helpers
+	}
+
+	/**
+	 * Applies a transform to the bitboard of one color.
+	 *
+	 * @param bits the bitboard.
+	 * @param t the transform (0-7).
+	 * @return the transformed bitboard.
+	 */
+	public static long transform(long bits, int t) {
+		long[][] rows = ROW_MAP[t];
+		return rows[0][(int) (bits & 63)]
+				| rows[1][(int) ((bits >>> 6) & 63)]
+				| rows[2][(int) ((bits >>> 12) & 63)]
+				| rows[3][(int) ((bits >>> 18) & 63)]
+				| rows[4][(int) ((bits >>> 24) & 63)]
+				| rows[5][(int) ((bits >>> 30) & 63)];
+	}
+
+	/**
+	 * The exact key of a position: each cell is a base 3 digit
+	 * (0=empty 1=black 2=white), so different positions always have
+	 * different keys. It fits in 58 bits.
+	 *
+	 * @param black the black bitboard.
+	 * @param white the white bitboard.
+	 * @return the key of the position.
+	 */
+	public static long key(long black, long white) {
+		long key = 0;
+		for (int row = 0; row < 6; row++) {
+			int shift = row * 6;
+			key += (TERNARY[(int) ((black >>> shift) & 63)]
+					+ 2 * TERNARY[(int) ((white >>> shift) & 63)]) * ROW_WEIGHT[row];
+		}
+		return key;
+	}
+
+	/**
+	 * Finds the image of the position with the smallest key.
+	 *
+	 * @param black the black bitboard.
+	 * @param white the white bitboard.
+	 * @return the smallest key shifted left by 3, with the transform
+	 * that produces it in the low 3 bits.
+	 */
+	public static long canonical(long black, long white) {
+		long best = key(black, white) << 3;
+		for (int t = 1; t < COUNT; t++) {
+			long image = key(transform(black, t), transform(white, t)) << 3 | t;
+			if (image < best) {
+				best = image;
+			}
+		}
+		return best;
+	}
+
+	public static long canonical(GameBoard gameBoard) {
+		return canonical(gameBoard.getBits(GameBoard.BLACK), gameBoard.getBits(GameBoard.WHITE));
+	}
+
+	public static long getKey(long canonical) {
+		return canonical >>> 3;
+	}
+
+	public static int getTransform(long canonical) {
+		return (int) (canonical & 7);
+	}
+
+	/**
+	 * Spreads a canonical key over all 64 bits so it can be used in
+	 * place of a zobrist hash by hash tables.
+	 *
+	 * @param key the canonical key.
+	 * @return the mixed key.
+	 */
+	public static long hashKey(long key) {
+		key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+		key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+		return key ^ (key >>> 31);
+	}
+
+	/**
+	 * Maps a move onto the transformed board: the same move played on
+	 * the transformed board gives the transformed result. A mirror
+	 * turns a clockwise rotation into a counter-clockwise one.
+	 *
+	 * @param move the packed move.
+	 * @param t the transform (0-7).
+	 * @return the transformed move.
+	 */
+	public static int transformMove(int move, int t) {
+		if (move == Move.NONE || t == 0) {
+			return move;
+		}
+		int quadrantCenter = GameBoard.QUADRANT_OFFSET[Move.getQuadrant(move)] + 7;
+		int mapped = CELL_MAP[t][quadrantCenter];
+		int quadrant = (mapped / 18) * 2 + (mapped % 6) / 3;
+		int dir = t >= 4 ? 1 - Move.getDirection(move) : Move.getDirection(move);
+		return Move.encode(CELL_MAP[t][Move.getCell(move)], quadrant, dir);
+	}
+
+	public static int inverse(int t) {
+		return INVERSE[t];
+	}
+
+	/**
+	 * Checks whether any transform other than 0 leaves the position
+	 * unchanged, which is when some moves are mirror images of others.
+	 *
+	 * @param gameBoard the gameboard.
+	 * @return whether the position is symmetric.
+	 */
+	public static boolean isSymmetric(GameBoard gameBoard) {
+		long black = gameBoard.getBits(GameBoard.BLACK);
+		long white = gameBoard.getBits(GameBoard.WHITE);
+		for (int t = 1; t < COUNT; t++) {
+			if (transform(black, t) == black && transform(white, t) == white) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Drops moves whose resulting position is a mirror image of the
+	 * result of an earlier move. The moves that are left keep their
+	 * order. Only used at the root, since it makes every move.
+	 *
+	 * @param gameBoard the gameboard.
+	 * @param moves the packed moves, compacted in place.
+	 * @param numMoves the number of moves.
+	 * @param color the bitboard index of the color to move.
+	 * @param seen buffer of at least numMoves keys.
+	 * @return the number of moves left.
+	 */
+	public static int removeSymmetricMoves(GameBoard gameBoard, int[] moves, int numMoves,
+			int color, long[] seen) {
+		if (!isSymmetric(gameBoard)) {
+			return numMoves;
+		}
+		int count = 0;
+		for (int i = 0; i < numMoves; i++) {
+			gameBoard.makeMove(moves[i], color);
+			long key = getKey(canonical(gameBoard));
+			gameBoard.unmakeMove(moves[i], color);
+			boolean duplicate = false;
+			for (int j = 0; j < count && !duplicate; j++) {
+				duplicate = seen[j] == key;
+			}
+			if (!duplicate) {
+				seen[count] = key;
+				moves[count++] = moves[i];
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * This class finds the moves that win on the spot and the moves that
+ * stop the other player from winning on the next move. In Pentago a
+ * five can be made by the rotation as well as by the placement, and a
+ * rotation can also make a five for the other color, so every move is
+ * played out on the gameboard rather than matched against patterns.
+ */
+public class Threats {
+
+	private Threats() {
+		//only static helpers
+	}
+
+	/**
+	 * Finds a move that wins at once for a color, whether or not it is
+	 * that color's turn. A move that makes a five for both colors is a
+	 * draw, not a win.
+	 *
+	 * @param gameBoard the gameboard, left as it was.
+	 * @param color the bitboard index of the color.
+	 * @param buffer buffer for the moves of the color.
+	 * @return the first winning move, Move.NONE if there is none.
+	 */
+	public static int findWin(GameBoard gameBoard, int color, int[] buffer) {
+		if (!hasWin(gameBoard.getBits(color), gameBoard.getBits(1 - color))) {
+			return Move.NONE;
+		}
+		int win = color == GameBoard.BLACK ? GameBoard.BLACK_WINS : GameBoard.WHITE_WINS;
+		int numMoves = gameBoard.generateMoves(buffer, color);
+		for (int i = 0; i < numMoves; i++) {
+			gameBoard.makeMove(buffer[i], color);
+			int result = gameBoard.getResult();
+			gameBoard.unmakeMove(buffer[i], color);
+			if (result == win) {
+				return buffer[i];
+			}
+		}
+		return Move.NONE;
+	}
+
+	/**
+	 * Checks whether a color has a move that wins at once, without
+	 * making any moves. Placing a piece and then rotating is the same
+	 * as rotating and then placing it on the cell it is turned to, so
+	 * for each of the 8 rotations it looks for a line that the rotated
+	 * pieces fill but for one empty cell, or fill already. A rotation
+	 * that makes a five for the other color can not win.
+	 *
+	 * @param mine the bitboard of the color.
+	 * @param theirs the bitboard of the other color.
+	 * @return whether the color can win with its next move.
+	 */
+	public static boolean hasWin(long mine, long theirs) {
+		//a five needs 4 pieces already on the board, and an empty cell.
+		if (Long.bitCount(mine) < 4 || (mine | theirs) == GameBoard.FULL_BOARD) {
+			return false;
+		}
+		for (int quadrant = 0; quadrant < 4; quadrant++) {
+			for (int dir = 0; dir < 2; dir++) {
+				long rotatedMine = GameBoard.rotateBits(mine, quadrant, dir);
+				long rotatedTheirs = -1;	//only rotated once a line is close.
+				for (long line : GameBoard.WIN_LINES) {
+					long missing = line & ~rotatedMine;
+					if ((missing & (missing - 1)) != 0) {
+						continue;		//more than one cell missing.
+					}
+					if (rotatedTheirs == -1) {
+						rotatedTheirs = GameBoard.rotateBits(theirs, quadrant, dir);
+						if (GameBoard.hasFive(rotatedTheirs)) {
+							break;
+						}
+					}
+					if ((missing & rotatedTheirs) == 0) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the cells where a color can place a piece and then win with
+	 * one of the rotations. Every winning move places on one of them.
+	 *
+	 * @param mine the bitboard of the color.
+	 * @param theirs the bitboard of the other color.
+	 * @return the cells as a bitboard.
+	 */
+	public static long winningCells(long mine, long theirs) {
+		long empty = GameBoard.FULL_BOARD & ~(mine | theirs);
+		if (Long.bitCount(mine) < 4 || empty == 0) {
+			return 0;
+		}
+		long cells = 0;
+		for (int quadrant = 0; quadrant < 4; quadrant++) {
+			for (int dir = 0; dir < 2; dir++) {
+				long rotatedMine = GameBoard.rotateBits(mine, quadrant, dir);
+				long rotatedTheirs = -1;
+				for (long line : GameBoard.WIN_LINES) {
+					long missing = line & ~rotatedMine;
+					if ((missing & (missing - 1)) != 0) {
+						continue;
+					}
+					if (rotatedTheirs == -1) {
+						rotatedTheirs = GameBoard.rotateBits(theirs, quadrant, dir);
+						if (GameBoard.hasFive(rotatedTheirs)) {
+							break;
+						}
+					}
+					if ((missing & rotatedTheirs) == 0) {
+						//the rotation alone makes the five, so any empty cell will do.
+						cells |= missing == 0 ? empty : GameBoard.rotateBits(missing, quadrant, 1 - dir);
+					}
+				}
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * Drops the moves after which the other color wins: either the move
+	 * itself makes a five for the other color, or the other color has a
+	 * winning move next. The moves that are left keep their order.
+	 *
+	 * It works on the bitboards instead of making the moves. The other
+	 * color's pieces after a move only depend on its rotation, and a
+	 * piece of this color can only take a winning move away, so when
+	 * the other color has no win after the rotation alone, no move with
+	 * that rotation loses. When it has, the piece can only save the game
+	 * by taking the cell the other color has to place on, or by making
+	 * a five of its own when the other color rotates, so the other
+	 * cells are not checked.
+	 *
+	 * @param gameBoard the gameboard.
+	 * @param moves the packed moves of the color, compacted in place.
+	 * @param numMoves the number of moves.
+	 * @param color the bitboard index of the color to move.
+	 * @return the number of moves left.
+	 */
+	public static int removeLosingMoves(GameBoard gameBoard, int[] moves, int numMoves, int color) {
+		long mine = gameBoard.getBits(color);
+		long theirs = gameBoard.getBits(1 - color);
+		//one bit per quadrant and direction.
+		int checked = 0;		//rotations already looked at.
+		int theirFive = 0;		//rotations that make a five for the other color.
+		int harmless = 0;		//rotations after which the other color has no win.
+		long[] savingCells = null;	//per rotation, the cells a piece might save the game on.
+		int count = 0;
+		for (int i = 0; i < numMoves; i++) {
+			int move = moves[i];
+			int quadrant = Move.getQuadrant(move);
+			int dir = Move.getDirection(move);
+			int rotation = 1 << (quadrant * 2 + dir);
+			long rotatedTheirs = GameBoard.rotateBits(theirs, quadrant, dir);
+			long rotatedBefore = GameBoard.rotateBits(mine, quadrant, dir);
+			int index = quadrant * 2 + dir;
+			if ((checked & rotation) == 0) {
+				checked |= rotation;
+				if (GameBoard.hasFive(rotatedTheirs)) {
+					theirFive |= rotation;
+				} else if (!hasWin(rotatedTheirs, rotatedBefore)) {
+					harmless |= rotation;
+				} else {
+					if (savingCells == null) {
+						savingCells = new long[8];
+					}
+					savingCells[index] = winningCells(rotatedTheirs, rotatedBefore)
+							| winningCells(rotatedBefore, rotatedTheirs);
+				}
+			}
+			boolean safe = (harmless & rotation) != 0;
+			if (!safe) {
+				long rotatedMine = GameBoard.rotateBits(mine | (1L << Move.getCell(move)), quadrant, dir);
+				if (GameBoard.hasFive(rotatedMine)) {
+					safe = true;	//a win, or a draw when both have a five.
+				} else {
+					safe = (theirFive & rotation) == 0
+							&& (rotatedMine & ~rotatedBefore & savingCells[index]) != 0
+							&& !hasWin(rotatedTheirs, rotatedMine);
+				}
+			}
+			if (safe) {
+				moves[count++] = move;
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,241 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class remembers the result of positions that were already
+ * searched, so a position reached again through a different move order
+ * (which happens all the time in Pentago because placements and
+ * rotations on different quadrants commute) is not searched again.
+ *
+ * The table is a fixed-size long[] holding two longs per entry: the
+ * data and the position hash XOR the data. There are no locks. If two
+ * threads write the same entry at once, the torn entry no longer XORs
+ * back to its hash and a probe just treats it as a miss.
+ *
+ * Entries are grouped in buckets of 4. A store replaces the entry of
+ * the same position, otherwise the one with the lowest depth, where
+ * entries left over from earlier searches count as shallower the older
+ * they are.
+ */
+public class TranspositionTable {
+	//bound types of a stored score.
+	public static final int EXACT = 0;
+	public static final int LOWER_BOUND = 1;	//the score is at least this.
+	public static final int UPPER_BOUND = 2;	//the score is at most this.
+
+	private static final int BUCKET_SIZE = 4;		//entries per bucket.
+	private static final int ENTRY_BYTES = 16;		//two longs.
+	private static final int AGE_PENALTY = 4;		//depth lost per search an entry is old.
+
+	//layout of the data long.
+	private static final int DEPTH_SHIFT = 32;
+	private static final int BOUND_SHIFT = 40;
+	private static final int MOVE_SHIFT = 42;
+	private static final int AGE_SHIFT = 52;
+	private static final long VALID = 1L << 63;		//set in every stored entry.
+
+	private final long[] table;
+	private final long bucketMask;
+	private volatile int age;
+
+	private final LongAdder probes = new LongAdder();
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder cutoffs = new LongAdder();
+	private final LongAdder stores = new LongAdder();
+
+	/**
+	 * Constructor that sizes the table in bytes. The number of buckets
+	 * is rounded down to a power of two.
+	 *
+	 * @param sizeInBytes memory the table may use.
+	 */
+	public TranspositionTable(long sizeInBytes) {
+		long buckets = Long.highestOneBit(Math.max(1, sizeInBytes / (ENTRY_BYTES * BUCKET_SIZE)));
+		buckets = Math.min(buckets, Integer.MAX_VALUE / (2 * BUCKET_SIZE) + 1);
+		table = new long[(int) (buckets * BUCKET_SIZE * 2)];
+		bucketMask = buckets - 1;
+	}
+
+	/**
+	 * Called at the start of every search, so entries from earlier
+	 * searches are the first to be replaced.
+	 */
+	public void newSearch() {
+		age = (age + 1) & 63;
+	}
+
+	/**
+	 * Looks up a position.
+	 *
+	 * @param key the hash of the position.
+	 * @return the data of the entry, 0 if the position is not stored.
+	 */
+	public long probe(long key) {
+		probes.increment();
+		int index = (int) ((key & bucketMask) * BUCKET_SIZE * 2);
+		for (int i = index; i < index + BUCKET_SIZE * 2; i += 2) {
+			long data = table[i + 1];
+			if ((table[i] ^ data) == key && data != 0) {
+				hits.increment();
+				return data;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Stores the result of a searched position.
+	 *
+	 * @param key the hash of the position.
+	 * @param depth the depth the position was searched to.
+	 * @param bound EXACT, LOWER_BOUND or UPPER_BOUND.
+	 * @param score the score of the position.
+	 * @param move the best move found, Move.NONE if there is none.
+	 */
+	public void store(long key, int depth, int bound, int score, int move) {
+		stores.increment();
+		int index = (int) ((key & bucketMask) * BUCKET_SIZE * 2);
+		int currentAge = age;
+		int replace = index;
+		int lowestValue = Integer.MAX_VALUE;
+		for (int i = index; i < index + BUCKET_SIZE * 2; i += 2) {
+			long data = table[i + 1];
+			if (data == 0) {
+				if (lowestValue > Integer.MIN_VALUE) {
+					replace = i;
+					lowestValue = Integer.MIN_VALUE;
+				}
+				continue;
+			}
+			if ((table[i] ^ data) == key) {
+				//same position: keep a deeper result from this search.
+				if (getDepth(data) > depth && getAge(data) == currentAge && bound != EXACT) {
+					return;
+				}
+				if (move == Move.NONE) {
+					move = getMove(data);
+				}
+				replace = i;
+				break;
+			}
+			int value = getDepth(data) - AGE_PENALTY * ((currentAge - getAge(data)) & 63);
+			if (value < lowestValue) {
+				replace = i;
+				lowestValue = value;
+			}
+		}
+		long data = encode(depth, bound, score, move, currentAge);
+		table[replace] = key ^ data;
+		table[replace + 1] = data;
+	}
+
+	/**
+	 * Packs the result of a position into the data long of an entry.
+	 * The AnalysisCache stores its entries in the same layout.
+	 *
+	 * @return the data, never 0.
+	 */
+	static long encode(int depth, int bound, int score, int move, int age) {
+		return VALID
+				| (score & 0xFFFFFFFFL)
+				| ((long) Math.min(depth, 255) << DEPTH_SHIFT)
+				| ((long) bound << BOUND_SHIFT)
+				| ((long) (move + 1) << MOVE_SHIFT)
+				| ((long) age << AGE_SHIFT);
+	}
+
+	/**
+	 * Called by the search when a stored score was good enough to
+	 * skip searching a position.
+	 */
+	public void recordCutoff() {
+		cutoffs.increment();
+	}
+
+	public static int getScore(long data) {
+		return (int) data;
+	}
+
+	public static int getDepth(long data) {
+		return (int) ((data >>> DEPTH_SHIFT) & 255);
+	}
+
+	public static int getBound(long data) {
+		return (int) ((data >>> BOUND_SHIFT) & 3);
+	}
+
+	public static int getMove(long data) {
+		return (int) ((data >>> MOVE_SHIFT) & 1023) - 1;
+	}
+
+	private static int getAge(long data) {
+		return (int) ((data >>> AGE_SHIFT) & 63);
+	}
+
+	/**
+	 * Empties the table and resets the statistics.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0);
+		probes.reset();
+		hits.reset();
+		cutoffs.reset();
+		stores.reset();
+	}
+
+	public long getSizeInBytes() {
+		return (long) table.length * 8;
+	}
+
+	public long getProbes() {
+		return probes.sum();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getCutoffs() {
+		return cutoffs.sum();
+	}
+
+	/**
+	 * @return the fraction of probes that found their position.
+	 */
+	public double getHitRate() {
+		long numProbes = probes.sum();
+		return numProbes == 0 ? 0 : (double) hits.sum() / numProbes;
+	}
+
+	/**
+	 * @return the fraction of probes that cut off the search.
+	 */
+	public double getCutoffRate() {
+		long numProbes = probes.sum();
+		return numProbes == 0 ? 0 : (double) cutoffs.sum() / numProbes;
+	}
+
+	/**
+	 * Estimates how full the table is by sampling the first buckets.
+	 *
+	 * @return the fraction of sampled entries written by the current search.
+	 */
+	public double getUsage() {
+		int sample = Math.min(table.length / 2, 4096);
+		int used = 0;
+		int currentAge = age;
+		for (int i = 0; i < sample * 2; i += 2) {
+			if (table[i + 1] != 0 && getAge(table[i + 1]) == currentAge) {
+				used++;
+			}
+		}
+		return (double) used / sample;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("table %dMB: %d probes, %.1f%% hits, %.1f%% cutoffs, %d stores, %.1f%% full",
+				getSizeInBytes() >> 20, getProbes(), 100 * getHitRate(), 100 * getCutoffRate(),
+				stores.sum(), 100 * getUsage());
+	}
+}